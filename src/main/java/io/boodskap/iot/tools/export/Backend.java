@@ -0,0 +1,23 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.unit.TimeValue;
+
+public interface Backend {
+
+	public SearchResponse search(SearchRequest search) throws IOException;
+
+	public SearchResponse scroll(String scrollId, TimeValue keepAlive) throws IOException;
+
+	public void clearScroll(String scrollId) throws IOException;
+
+	public BulkResponse bulk(BulkRequest bulk) throws IOException;
+
+	public void close();
+
+}
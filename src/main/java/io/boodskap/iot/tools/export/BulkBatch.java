@@ -0,0 +1,66 @@
+package io.boodskap.iot.tools.export;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.action.index.IndexRequest;
+
+public class BulkBatch {
+
+	private final List<IndexRequest> requests = new ArrayList<IndexRequest>();
+	private final int maxDocs;
+	private final long maxBytes;
+	private final long maxAge;
+	private long bytes = 0;
+	private long started = 0;
+
+	public BulkBatch(int maxDocs, long maxBytes, long maxAge) {
+		this.maxDocs = maxDocs;
+		this.maxBytes = maxBytes;
+		this.maxAge = maxAge;
+	}
+
+	public void add(IndexRequest request) {
+
+		if(requests.isEmpty()) {
+			started = System.currentTimeMillis();
+		}
+
+		requests.add(request);
+		bytes += null != request.source() ? request.source().length() : 0;
+	}
+
+	public boolean isFull() {
+
+		if(requests.isEmpty()) return false;
+
+		if(maxDocs > 0 && requests.size() >= maxDocs) return true;
+
+		if(maxBytes > 0 && bytes >= maxBytes) return true;
+
+		return maxAge > 0 && (System.currentTimeMillis() - started) >= maxAge;
+	}
+
+	public boolean isEmpty() {
+		return requests.isEmpty();
+	}
+
+	public int size() {
+		return requests.size();
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public List<IndexRequest> getRequests() {
+		return requests;
+	}
+
+	public void clear() {
+		requests.clear();
+		bytes = 0;
+		started = 0;
+	}
+
+}
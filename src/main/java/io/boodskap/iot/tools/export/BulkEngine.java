@@ -0,0 +1,134 @@
+package io.boodskap.iot.tools.export;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class BulkEngine {
+
+	private final int capacity;
+	private final Semaphore slots;
+	private final ExecutorService pool;
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+	private final Gauge inflight = Metrics.instance().gauge("import.bulk.inflight");
+	private final Gauge queued = Metrics.instance().gauge("import.bulk.queued");
+
+	public BulkEngine(int concurrency, int queueSize) {
+
+		final int workers = Math.max(1, concurrency);
+		final AtomicInteger sequence = new AtomicInteger();
+
+		this.capacity = workers + Math.max(0, queueSize);
+		this.slots = new Semaphore(capacity);
+		this.pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, String.format("bulk-%d", sequence.incrementAndGet()));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public Future<?> submit(final Runnable bulk) {
+
+		check();
+
+		try {
+			slots.acquire();
+		}catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+
+		queued.increment();
+
+		try {
+
+			return pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+
+					queued.decrement();
+					inflight.set(running.incrementAndGet());
+
+					try {
+
+						RuntimeException failed = failure.get();
+
+						if(null != failed) {
+							throw failed;
+						}
+
+						bulk.run();
+
+					}catch(RuntimeException ex) {
+						failure.compareAndSet(null, ex);
+						throw ex;
+					}finally {
+						inflight.set(running.decrementAndGet());
+						slots.release();
+					}
+
+					return null;
+				}
+			});
+
+		}catch(RuntimeException ex) {
+			queued.decrement();
+			slots.release();
+			throw ex;
+		}
+	}
+
+	public void await() {
+
+		try {
+			slots.acquire(capacity);
+			slots.release(capacity);
+		}catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+
+		check();
+	}
+
+	public void close() {
+
+		if(null != failure.get()) {
+			pool.shutdownNow();
+			return;
+		}
+
+		pool.shutdown();
+
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			pool.shutdownNow();
+		}
+	}
+
+	protected void check() {
+
+		RuntimeException ex = failure.get();
+
+		if(null != ex) {
+			throw new RuntimeException(String.format("Bulk import failed, %s", ex.getMessage()), ex);
+		}
+	}
+
+	public int getInflight() {
+		return running.get();
+	}
+
+}
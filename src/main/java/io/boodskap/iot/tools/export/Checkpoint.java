@@ -0,0 +1,78 @@
+package io.boodskap.iot.tools.export;
+
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class Checkpoint {
+
+	private final String index;
+	private Object[] sortValues;
+	private long exported = 0;
+	private boolean completed = false;
+
+	public Checkpoint(String index) {
+		this.index = index;
+	}
+
+	public Checkpoint(String index, String sortValues, long exported, boolean completed) {
+		this.index = index;
+		this.sortValues = parseSortValues(sortValues);
+		this.exported = exported;
+		this.completed = completed;
+	}
+
+	public static Checkpoint fromJSON(String index, String json) {
+		JSONObject obj = new JSONObject(json);
+		return new Checkpoint(index, obj.has("sortValues") ? obj.getJSONArray("sortValues").toString() : null, obj.optLong("exported"), obj.optBoolean("completed"));
+	}
+
+	public String toJSON() {
+		JSONObject obj = new JSONObject();
+		obj.put("index", index);
+		obj.put("sortValues", null != sortValues ? new JSONArray(sortValues) : null);
+		obj.put("exported", exported);
+		obj.put("completed", completed);
+		return obj.toString();
+	}
+
+	public synchronized void advance(Object[] sortValues, int count) {
+		this.sortValues = sortValues;
+		this.exported += count;
+	}
+
+	public String sortValuesAsJSON() {
+		return null != sortValues ? new JSONArray(sortValues).toString() : null;
+	}
+
+	private static Object[] parseSortValues(String json) {
+
+		if(null == json) return null;
+
+		List<Object> values = new JSONArray(json).toList();
+
+		return values.toArray(new Object[values.size()]);
+	}
+
+	public String getIndex() {
+		return index;
+	}
+
+	public Object[] getSortValues() {
+		return sortValues;
+	}
+
+	public long getExported() {
+		return exported;
+	}
+
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	public void setCompleted(boolean completed) {
+		this.completed = completed;
+	}
+
+}
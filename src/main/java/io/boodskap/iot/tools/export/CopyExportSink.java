@@ -0,0 +1,111 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+
+@SuppressWarnings("deprecation")
+public class CopyExportSink extends FileExportSink {
+
+	private final Importer importer;
+	private final String domainKey;
+	private final BulkBatch batch;
+	private final List<Future<?>> pending = new ArrayList<Future<?>>();
+
+	public CopyExportSink(File indexFolder, Importer importer, String domainKey) {
+		super(indexFolder);
+		this.importer = importer;
+		this.domainKey = domainKey;
+		this.batch = importer.newBatch();
+	}
+
+	@Override
+	public void write(SearchHit hit) throws IOException, SQLException {
+
+		IndexRequest req = new IndexRequest(hit.getIndex(), hit.getType(), hit.getId());
+		req.source(hit.getSourceRef(), XContentType.JSON);
+		batch.add(req);
+
+		if(batch.isFull()) {
+			send();
+		}
+	}
+
+	@Override
+	public void flush(Checkpoint checkpoint) throws IOException, SQLException {
+		send();
+
+		if(null != checkpoint) {
+			await();
+		}
+
+		super.flush(checkpoint);
+	}
+
+	@Override
+	public void saveWatermark(String index, String field, long watermark) throws IOException, SQLException {
+		send();
+		await();
+		super.saveWatermark(index, field, watermark);
+	}
+
+	protected void send() throws IOException {
+
+		if(batch.isEmpty()) return;
+
+		try {
+			collect(false);
+			pending.add(importer.insert(domainKey, batch));
+		}finally {
+			batch.clear();
+		}
+	}
+
+	protected void await() throws IOException {
+		collect(true);
+	}
+
+	protected void collect(boolean wait) throws IOException {
+
+		Iterator<Future<?>> it = pending.iterator();
+
+		while(it.hasNext()) {
+
+			Future<?> f = it.next();
+
+			if(!wait && !f.isDone()) continue;
+
+			try {
+				f.get();
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException(ex);
+			}catch(ExecutionException ex) {
+				throw new IOException(ex.getCause());
+			}
+
+			it.remove();
+		}
+	}
+
+	@Override
+	public void close() throws IOException, SQLException {
+		batch.clear();
+
+		try {
+			await();
+		}finally {
+			super.close();
+		}
+	}
+
+}
@@ -185,9 +185,14 @@ public class Curator {
 			fileMap.put(csvFile.getName(), headers);
 		}
 		
+		long began = System.nanoTime();
+		
 		writer.printRecord(record);
 		writer.flush();
 		++written;
+		
+		Metrics.instance().histogram("curate.write").since(began);
+		Metrics.instance().meter("curate.records").mark(1);
 	}
 	
 	private void closeWriters() {
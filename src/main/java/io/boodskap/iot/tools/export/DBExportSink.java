@@ -0,0 +1,335 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.search.SearchHit;
+
+@SuppressWarnings("deprecation")
+public class DBExportSink implements ExportSink {
+
+	private static final String MERGE_SQL = "MERGE INTO EXPORTED (DKEY, IDXNAME, IDXTYPE, DOCID, DATA, HASH) KEY (DKEY, IDXNAME, IDXTYPE, DOCID) VALUES (?,?,?,?,?,?)";
+	private static final int ADDED = 0;
+	private static final int CHANGED = 1;
+	private static final int UNCHANGED = 2;
+
+	private static final String PROBE_SQL = "SELECT 1 FROM EXPORTED WHERE DKEY = ? AND IDXNAME = ? AND IDXTYPE = ? LIMIT 1";
+	private static final String HASH_SQL = "SELECT DOCID, HASH FROM EXPORTED WHERE DKEY = ? AND IDXNAME = ? AND IDXTYPE = ? AND DOCID IN (%s)";
+	private static final int HASH_CHUNK = 500;
+
+	private final Connection connection;
+	private final PreparedStatement pstmt;
+	private final List<SearchHit> hits = new ArrayList<SearchHit>();
+	private final List<Long> hashes = new ArrayList<Long>();
+	private final Set<String> probed = new HashSet<String>();
+	private final Set<String> fresh = new HashSet<String>();
+	private final boolean binaryData;
+	private final String domainKey;
+	private final ExportStats[] stats;
+	private long added = 0;
+	private long changed = 0;
+	private long unchanged = 0;
+
+	public DBExportSink(Connection connection, String domainKey, boolean binaryData, ExportStats... stats) throws SQLException {
+		this.connection = connection;
+		this.domainKey = domainKey;
+		this.binaryData = binaryData;
+		this.stats = stats;
+		this.connection.setAutoCommit(false);
+		this.pstmt = connection.prepareStatement(MERGE_SQL);
+	}
+
+	@Override
+	public void write(SearchHit hit) throws IOException, SQLException {
+		hits.add(hit);
+		hashes.add(hash(hit.getSourceRef()));
+	}
+
+	protected void merge() throws IOException, SQLException {
+
+		Map<String, Long> stored = storedHashes();
+
+		for(int i=0;i<hits.size();i++) {
+
+			SearchHit hit = hits.get(i);
+			long hash = hashes.get(i);
+
+			switch(compare(stored, hit, hash)) {
+			case UNCHANGED:
+				++unchanged;
+				continue;
+			case CHANGED:
+				++changed;
+				break;
+			default:
+				++added;
+				break;
+			}
+
+			add(hit, hash);
+		}
+
+		hits.clear();
+		hashes.clear();
+	}
+
+	protected void add(SearchHit hit, long hash) throws IOException, SQLException {
+
+		BytesReference source = hit.getSourceRef();
+		int sidx = 1;
+
+		//DKEY, IDXNAME, IDXTYPE, DOCID, DATA, HASH
+		pstmt.setString(sidx++, domainKey);
+		pstmt.setString(sidx++, hit.getIndex());
+		pstmt.setString(sidx++, hit.getType());
+		pstmt.setString(sidx++, hit.getId());
+
+		if(binaryData) {
+			pstmt.setBinaryStream(sidx++, source.streamInput(), source.length());
+		}else {
+			pstmt.setCharacterStream(sidx++, new InputStreamReader(source.streamInput(), StandardCharsets.UTF_8));
+		}
+
+		pstmt.setLong(sidx++, hash);
+		pstmt.addBatch();
+	}
+
+	protected int compare(Map<String, Long> stored, SearchHit hit, long hash) {
+
+		String key = key(hit.getIndex(), hit.getType(), hit.getId());
+
+		if(!stored.containsKey(key)) return ADDED;
+
+		Long previous = stored.get(key);
+
+		return (null != previous && previous == hash) ? UNCHANGED : CHANGED;
+	}
+
+	protected Map<String, Long> storedHashes() throws SQLException {
+
+		Map<String, List<SearchHit>> groups = new LinkedHashMap<String, List<SearchHit>>();
+
+		for(SearchHit hit : hits) {
+
+			String group = key(hit.getIndex(), hit.getType());
+
+			if(probed.add(group) && !exists(hit.getIndex(), hit.getType())) {
+				fresh.add(group);
+			}
+
+			if(fresh.contains(group)) continue;
+
+			groups.computeIfAbsent(group, k -> new ArrayList<SearchHit>()).add(hit);
+		}
+
+		Map<String, Long> stored = new HashMap<String, Long>();
+
+		for(List<SearchHit> group : groups.values()) {
+			for(int from=0;from<group.size();from+=HASH_CHUNK) {
+				load(stored, group.subList(from, Math.min(group.size(), from + HASH_CHUNK)));
+			}
+		}
+
+		return stored;
+	}
+
+	protected boolean exists(String index, String type) throws SQLException {
+
+		PreparedStatement stmt = connection.prepareStatement(PROBE_SQL);
+
+		try {
+
+			int sidx = 1;
+
+			stmt.setString(sidx++, domainKey);
+			stmt.setString(sidx++, index);
+			stmt.setString(sidx++, type);
+
+			ResultSet result = stmt.executeQuery();
+
+			try {
+				return result.next();
+			}finally {
+				result.close();
+			}
+
+		}finally {
+			stmt.close();
+		}
+	}
+
+	protected void load(Map<String, Long> stored, List<SearchHit> group) throws SQLException {
+
+		String index = group.get(0).getIndex();
+		String type = group.get(0).getType();
+		StringBuilder params = new StringBuilder();
+
+		for(int i=0;i<group.size();i++) {
+			params.append(i > 0 ? ",?" : "?");
+		}
+
+		PreparedStatement stmt = connection.prepareStatement(String.format(HASH_SQL, params));
+
+		try {
+
+			int sidx = 1;
+
+			stmt.setString(sidx++, domainKey);
+			stmt.setString(sidx++, index);
+			stmt.setString(sidx++, type);
+
+			for(SearchHit hit : group) {
+				stmt.setString(sidx++, hit.getId());
+			}
+
+			ResultSet result = stmt.executeQuery();
+
+			try {
+
+				while(result.next()) {
+					long hash = result.getLong(2);
+					stored.put(key(index, type, result.getString(1)), result.wasNull() ? null : hash);
+				}
+
+			}finally {
+				result.close();
+			}
+
+		}finally {
+			stmt.close();
+		}
+	}
+
+	private static String key(String... parts) {
+		return String.join("\u0000", parts);
+	}
+
+	public static long hash(BytesReference source) {
+		BytesRef ref = source.toBytesRef();
+		return MurmurHash3.hash128(ref.bytes, ref.offset, ref.length, 0, new MurmurHash3.Hash128()).h1;
+	}
+
+	@Override
+	public void flush(Checkpoint checkpoint) throws IOException, SQLException {
+
+		merge();
+		pstmt.executeBatch();
+
+		for(ExportStats s : stats) {
+			s.changes(added, changed, unchanged);
+		}
+
+		added = changed = unchanged = 0;
+
+		if(null != checkpoint) {
+
+			PreparedStatement stmt = connection.prepareStatement("MERGE INTO CHECKPOINTS VALUES (?,?,?,?)");
+
+			try {
+
+				int sidx = 1;
+
+				//IDXNAME, SORTVALUES, EXPORTED, COMPLETED
+				stmt.setString(sidx++, checkpoint.getIndex());
+				stmt.setString(sidx++, checkpoint.sortValuesAsJSON());
+				stmt.setLong(sidx++, checkpoint.getExported());
+				stmt.setBoolean(sidx++, checkpoint.isCompleted());
+				stmt.executeUpdate();
+
+			}finally {
+				stmt.close();
+			}
+		}
+
+		connection.commit();
+	}
+
+	@Override
+	public Checkpoint loadCheckpoint(String index) throws IOException, SQLException {
+
+		PreparedStatement stmt = connection.prepareStatement("SELECT SORTVALUES, EXPORTED, COMPLETED FROM CHECKPOINTS WHERE IDXNAME = ?");
+
+		try {
+
+			stmt.setString(1, index);
+			ResultSet result = stmt.executeQuery();
+
+			if(result.next()) {
+				return new Checkpoint(index, result.getString("SORTVALUES"), result.getLong("EXPORTED"), result.getBoolean("COMPLETED"));
+			}
+
+		}finally {
+			stmt.close();
+		}
+
+		return new Checkpoint(index);
+	}
+
+	@Override
+	public Long loadWatermark(String index, String field) throws IOException, SQLException {
+
+		PreparedStatement stmt = connection.prepareStatement("SELECT WATERMARK FROM WATERMARKS WHERE IDXNAME = ? AND FIELD = ?");
+
+		try {
+
+			stmt.setString(1, index);
+			stmt.setString(2, field);
+			ResultSet result = stmt.executeQuery();
+
+			if(result.next()) {
+				return result.getLong("WATERMARK");
+			}
+
+		}finally {
+			stmt.close();
+		}
+
+		return null;
+	}
+
+	@Override
+	public void saveWatermark(String index, String field, long watermark) throws IOException, SQLException {
+
+		PreparedStatement stmt = connection.prepareStatement("MERGE INTO WATERMARKS VALUES (?,?,?)");
+
+		try {
+
+			int sidx = 1;
+
+			//IDXNAME, FIELD, WATERMARK
+			stmt.setString(sidx++, index);
+			stmt.setString(sidx++, field);
+			stmt.setLong(sidx++, watermark);
+			stmt.executeUpdate();
+			connection.commit();
+
+		}finally {
+			stmt.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException, SQLException {
+		try {
+			pstmt.close();
+		}finally {
+			connection.close();
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.elasticsearch.search.SearchHit;
+
+public interface ExportSink {
+
+	public void write(SearchHit hit) throws IOException, SQLException;
+
+	public void flush(Checkpoint checkpoint) throws IOException, SQLException;
+
+	public Checkpoint loadCheckpoint(String index) throws IOException, SQLException;
+
+	public Long loadWatermark(String index, String field) throws IOException, SQLException;
+
+	public void saveWatermark(String index, String field, long watermark) throws IOException, SQLException;
+
+	public void close() throws IOException, SQLException;
+
+}
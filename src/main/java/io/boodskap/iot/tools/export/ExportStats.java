@@ -0,0 +1,79 @@
+package io.boodskap.iot.tools.export;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ExportStats {
+
+	private final String domainKey;
+	private final AtomicLong indexes = new AtomicLong();
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong messages = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong added = new AtomicLong();
+	private final AtomicLong changed = new AtomicLong();
+	private final AtomicLong unchanged = new AtomicLong();
+
+	public ExportStats() {
+		this(null);
+	}
+
+	public ExportStats(String domainKey) {
+		this.domainKey = domainKey;
+	}
+
+	public void add(String index, long count) {
+
+		total.addAndGet(count);
+
+		switch(index.substring(0, 4)) {
+		case "bskp":
+			indexes.addAndGet(count);
+			break;
+		case "rec_":
+			records.addAndGet(count);
+			break;
+		case "msg_":
+			messages.addAndGet(count);
+			break;
+		}
+	}
+
+	public void changes(long added, long changed, long unchanged) {
+		this.added.addAndGet(added);
+		this.changed.addAndGet(changed);
+		this.unchanged.addAndGet(unchanged);
+	}
+
+	public String getDomainKey() {
+		return domainKey;
+	}
+
+	public long getIndexes() {
+		return indexes.get();
+	}
+
+	public long getRecords() {
+		return records.get();
+	}
+
+	public long getMessages() {
+		return messages.get();
+	}
+
+	public long getTotal() {
+		return total.get();
+	}
+
+	public long getAdded() {
+		return added.get();
+	}
+
+	public long getChanged() {
+		return changed.get();
+	}
+
+	public long getUnchanged() {
+		return unchanged.get();
+	}
+
+}
@@ -1,35 +1,52 @@
 package io.boodskap.iot.tools.export;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
 import java.net.InetAddress;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
-import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
+import org.h2.mvstore.MVStore;
+
+import com.carrotsearch.hppc.cursors.ObjectCursor;
 
 @SuppressWarnings("deprecation")
 public class Exporter {
@@ -38,6 +55,8 @@ public class Exporter {
 	
 	private static final Set<String> BSKP_INDEXES = new HashSet<String>();
 	
+	private static final SearchHit[] END_OF_SCROLL = new SearchHit[0];
+	
 	private String host = "localhost";
 	private int port = 9300;
 	private int searchPort = 9200;
@@ -47,8 +66,29 @@ public class Exporter {
 	private String outFolder = "data";
 	private int fetchSize = 1000;
 	private long keepAlive = 60000;
+	private int domainWorkers = 1;
+	private int workers = 1;
+	private long pageBudget = 0;
+	private int minFetchSize = 100;
+	private int maxFetchSize = 10000;
+	private int slices = 1;
+	private int queueDepth = 2;
+	private int maxScrolls = 100;
+	private int partitions = 1;
+	private Importer destination;
+	private boolean shardTargeted = false;
+	private String preference;
+	private boolean http = false;
+	private boolean sniff = false;
+	private boolean resume = false;
+	private String sortField;
+	private String sinceField;
+	private Map<String, Set<String>> sourceIncludes = new HashMap<String, Set<String>>();
+	private Map<String, Set<String>> sourceExcludes = new HashMap<String, Set<String>>();
 	private boolean debug = false;
-	private boolean exportToDB = true;
+	private String format = "db";
+	private long segmentSize = 256 * 1024 * 1024;
+	private String compression = "gzip";
 	private boolean exportAllDomains = false;
 	private boolean exportAllIndexes = false;
 	private boolean exportAllRecords = false;
@@ -60,22 +100,28 @@ public class Exporter {
 	
 	
 	private PreBuiltTransportClient client;
-	private Connection connection = null;
-	private PreparedStatement pstmt = null;
+	private Backend backend;
+	private Set<Connection> connections = ConcurrentHashMap.newKeySet();
+	private Map<String, Boolean> binaryData = new ConcurrentHashMap<String, Boolean>();
+	private Map<String, MVStore> stores = new ConcurrentHashMap<String, MVStore>();
+	private Map<String, PageSizer> pageSizers = new ConcurrentHashMap<String, PageSizer>();
+	private final long runId = System.currentTimeMillis();
+	private final AtomicInteger sinkSequence = new AtomicInteger();
+	private ExecutorService domainPool;
+	private ExecutorService workerPool;
+	private ExecutorService slicePool;
+	private ExecutorService writerPool;
 	
 	
 	private int totalDomains;
-	private int currentDomain;
-	private int totalIndexes;
-	private int currentIndex;
-	private int totalRIndexes;
-	private int currentRIndex;
-	private int totalMIndexes;
-	private int currentMIndex;
-	private long totalEIndexes = 0;
-	private long totalERecords = 0;
-	private long totalEMessages = 0;
-	private long totalExported = 0;
+	private final AtomicInteger currentDomain = new AtomicInteger();
+	private final ExportStats totals = new ExportStats();
+	private final Progress progress = new Progress("Exported");
+	private final IndexCatalog catalog = new IndexCatalog();
+	private ScrollManager scrolls;
+	private final RateLimiter limiter = RateLimiter.get("export");
+	private final LatencyHistogram fetchLatency = Metrics.instance().histogram("export.scroll.fetch");
+	private final Gauge queued = Metrics.instance().gauge("export.queue.pages");
 	
 	
 	static {
@@ -147,6 +193,10 @@ public class Exporter {
 	private Exporter() {
 	}
 	
+	protected interface PageSource {
+		SearchHit[] next() throws Exception;
+	}
+	
 	public static final Exporter instance() {
 		return instance;
 	}
@@ -155,16 +205,43 @@ public class Exporter {
 		
 		ensureOutput();
 		
-		if(exportToDB) {
+		if("db".equals(format)) {
 			Class.forName("org.h2.Driver");
 		}
 
-		client= new PreBuiltTransportClient(
-				  Settings.builder().put("client.transport.sniff", false)
-				  					.put("node.name", nodeName)
-				                    .put("cluster.name", clusterName).build()) ;
+		if(http) {
+			
+			backend = new HttpBackend(host, searchPort);
+			
+		}else {
+			
+			client= new PreBuiltTransportClient(
+					  Settings.builder().put("client.transport.sniff", sniff)
+					  					.put("node.name", nodeName)
+					                    .put("cluster.name", clusterName).build()) ;
+			
+			client.addTransportAddress(new TransportAddress(InetAddress.getByName(host), port));
+			
+			backend = new TransportBackend(client);
+		}
+		
+		scrolls = new ScrollManager(backend, keepAlive, maxScrolls);
+		
+		if(domainWorkers > 1) {
+			domainPool = Executors.newFixedThreadPool(domainWorkers);
+		}
+		
+		if(workers > 1) {
+			workerPool = Executors.newFixedThreadPool(workers);
+		}
+		
+		if(shardTargeted || slices != 1) {
+			slicePool = Executors.newCachedThreadPool();
+		}
 		
-		client.addTransportAddress(new TransportAddress(InetAddress.getByName(host), port));
+		if(queueDepth > 0) {
+			writerPool = Executors.newCachedThreadPool();
+		}
 		
 	}
 	
@@ -195,120 +272,307 @@ public class Exporter {
 				domains.addAll(listDomains());
 			}
 			
+			try {
+				catalog.load(host, searchPort);
+			}catch(IOException ex) {
+				System.err.format("Unable to load the index catalog from %s:%d, %s\n", host, searchPort, ex.getMessage());
+			}
+			
+			final Map<String, Long> domainBytes = catalog.domainBytes();
+			final List<String> ordered = new ArrayList<String>(domains);
+			ordered.sort(Comparator.comparingLong((String domainKey) -> domainBytes.getOrDefault(domainKey.toLowerCase(), 0L)).reversed());
+			
 			totalDomains = domains.size();
 			
-	        for(String domainKey : domains) {
+			progress.setVerbose(debug);
+			progress.start();
+			
+			final long began = System.currentTimeMillis();
+			final List<Future<?>> pendingDomains = new ArrayList<Future<?>>();
+			final boolean indexesListed = !domainsListed;
+			
+	        for(final String domainKey : ordered) {
 	        	
-	        	++currentDomain;
-	        	totalIndexes = 0;
-	        	currentIndex = 0;
-	        	totalRIndexes = 0;
-	        	currentRIndex = 0;
-	        	totalMIndexes = 0;
-	        	currentMIndex = 0;
+	        	if(null == domainPool) {
+	        		exportDomain(domainKey, indexesListed);
+	        		continue;
+	        	}
 	        	
-				System.out.format("Exporting domain:%s [%d/%d]\n", domainKey, currentDomain, totalDomains);
-
-	        	if(exportToDB) {
-			        connection = DriverManager.getConnection(String.format("jdbc:h2:%s/%s;DB_CLOSE_ON_EXIT=FALSE", ensureOutput().getAbsolutePath(), domainKey), "sa", "" );
-			        
+	        	pendingDomains.add(domainPool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						exportDomain(domainKey, indexesListed);
+						return null;
+					}
+				}));
+	        }
+	        
+	        await(pendingDomains);
+	        
+	        progress.stop();
+			
+			System.out.format("Export complete, domains:%d, objects:%d, records:%d, messages:%d, total:%d, took:%d ms\n", totalDomains, totals.getIndexes(), totals.getRecords(), totals.getMessages(), totals.getTotal(), (System.currentTimeMillis() - began));
+			
+			if("db".equals(format)) {
+				System.out.format("Documents new:%d, changed:%d, unchanged:%d\n", totals.getAdded(), totals.getChanged(), totals.getUnchanged());
+			}
+			
+		}catch(Exception ex) {
+			ex.printStackTrace();
+		}finally {
+			close();
+		}
+		
+	}
+	
+	protected void exportDomain(String domainKey, boolean indexesListed) throws Exception {
+		
+		final int position = currentDomain.incrementAndGet();
+		final long began = System.currentTimeMillis();
+		final ExportStats stats = new ExportStats(domainKey);
+		final List<Connection> opened = new ArrayList<Connection>();
+		
+		System.out.format("Exporting domain:%s [%d/%d]\n", domainKey, position, totalDomains);
+		
+		try {
+			
+        	if("db".equals(format)) {
+        		
+        		for(String dbName : dbNames(domainKey)) {
+        		
+			        Connection connection = openConnection(dbName);
+			        connections.add(connection);
+			        opened.add(connection);
+		        
 			        Statement stmt = connection.createStatement();
-			        
-		        	stmt.executeUpdate( "CREATE TABLE IF NOT EXISTS EXPORTED (DKEY VARCHAR(16) NOT NULL, IDXNAME VARCHAR(256) NOT NULL, IDXTYPE VARCHAR(256), DOCID VARCHAR(256), DATA CLOB, PRIMARY KEY (DKEY, IDXNAME, IDXTYPE, DOCID));" );
-			        
-			        connection.commit();
-			        stmt.close();
-			        
-			        connection.setAutoCommit(false);
-			        pstmt = connection.prepareStatement("MERGE INTO EXPORTED VALUES (?,?,?,?,?)");
-			        
-	        	}
+		        
+		        	stmt.executeUpdate( "CREATE TABLE IF NOT EXISTS EXPORTED (DKEY VARCHAR(16) NOT NULL, IDXNAME VARCHAR(256) NOT NULL, IDXTYPE VARCHAR(256), DOCID VARCHAR(256), DATA BLOB, HASH BIGINT, PRIMARY KEY (DKEY, IDXNAME, IDXTYPE, DOCID));" );
+		        	stmt.executeUpdate( "ALTER TABLE EXPORTED ADD COLUMN IF NOT EXISTS HASH BIGINT;" );
 	        	
-	        	if(!domainsListed) {
-	        		
-					totalIndexes = indexes.size();
-
-					for(String index : indexes) {
-						++currentIndex;
-						export(connection, pstmt, domainKey, index);
-					}	        		
-	        	}
+		        	binaryData.putIfAbsent(domainKey, isBinaryData(connection));
 	        	
-	        	{
-					final Set<String> indexes = new HashSet<String>();
-					
-					if(exportAllRecords) {
-						indexes.addAll(listIndexes(true, domainKey));
-					}else {
-						for(Long id : records) {
-							String index = String.format("rec_%d_%s", id, domainKey);
-							indexes.add(index);
-						}
-					}
-					
-					totalRIndexes = indexes.size();
-
-					for(String index : indexes) {
-						++currentRIndex;
-						export(connection, pstmt, domainKey, index);
-					}
-	        		
-	        	}
+		        	if(null != sinceField) {
+		        		stmt.executeUpdate( "CREATE TABLE IF NOT EXISTS WATERMARKS (IDXNAME VARCHAR(256) NOT NULL, FIELD VARCHAR(256) NOT NULL, WATERMARK BIGINT, PRIMARY KEY (IDXNAME, FIELD));" );
+		        	}
 	        	
-	        	{
-					final Set<String> indexes = new HashSet<String>();
-					
-					if(exportAllMessages) {
-						indexes.addAll(listIndexes(false, domainKey));
-					}else {
-						for(Long id : messages) {
-							String index = String.format("msg_%d_%s", id, domainKey);						
-							indexes.add(index);
-						}
-					}
-
-					totalMIndexes = indexes.size();
-
-					for(String index : indexes) {
-						++currentMIndex;
-						export(connection, pstmt, domainKey, index);
+		        	if(resume) {
+		        		stmt.executeUpdate( "CREATE TABLE IF NOT EXISTS CHECKPOINTS (IDXNAME VARCHAR(256) NOT NULL, SORTVALUES VARCHAR, EXPORTED BIGINT, COMPLETED BOOLEAN, PRIMARY KEY (IDXNAME));" );
+		        	}
+		        
+			        stmt.close();
+        		}
+        		
+        		if(partitions > 1) {
+        			PartitionedExportSink.writeManifest(ensureOutput(), domainKey, partitions);
+        		}
+        		
+        	}else if("mvstore".equals(format)) {
+        		stores.put(domainKey, MVStoreExportSink.open(new File(ensureOutput(), String.format("%s%s", domainKey, MVStoreExportSink.EXTENSION)).getAbsolutePath()));
+        	}
+        	
+        	final List<Future<?>> pending = new ArrayList<Future<?>>();
+        	final Set<String> selected = new LinkedHashSet<String>();
+        	
+        	if(indexesListed) {
+        		selected.addAll(indexes);
+        	}
+        	
+			if(exportAllRecords) {
+				selected.addAll(catalog.list("rec_", domainKey));
+			}else {
+				for(Long id : records) {
+					selected.add(String.format("rec_%d_%s", id, domainKey));
+				}
+			}
+			
+			if(exportAllMessages) {
+				selected.addAll(catalog.list("msg_", domainKey));
+			}else {
+				for(Long id : messages) {
+					selected.add(String.format("msg_%d_%s", id, domainKey));
+				}
+			}
+			
+			final List<String> scheduled = catalog.largestFirst(selected);
+			final Map<String, Integer> counts = new HashMap<String, Integer>();
+			final Map<String, Integer> positions = new HashMap<String, Integer>();
+			
+			selected.removeAll(new HashSet<String>(scheduled));
+			
+			for(String index : selected) {
+				System.out.format("\tSkipping empty index:%s\n", index);
+			}
+			
+			if(catalog.isLoaded()) {
+				for(String index : scheduled) {
+					if(!catalog.isListed(index)) {
+						System.err.format("\tIndex %s is not in the index catalog, exporting it anyway\n", index);
 					}
-	        		
-	        	}
-	        	
-	        	if(exportToDB) {
-	        		pstmt.close();
-	        		connection.close();
-	        	}
-	        }
+				}
+			}
 			
+			for(String index : scheduled) {
+				counts.merge(index.substring(0, 4), 1, Integer::sum);
+			}
 			
-			System.out.format("Export complete, domains:%d, objects:%d, records:%d, messages:%d, total:%d\n", totalDomains, totalEIndexes, totalERecords, totalEMessages, totalExported);
+			for(String index : scheduled) {
+				String itype = index.substring(0, 4);
+				submit(pending, stats, domainKey, index, positions.merge(itype, 1, Integer::sum), counts.get(itype));
+			}
+        	
+        	await(pending);
+        	
+		}finally {
+			
+        	for(Connection connection : opened) {
+        		connections.remove(connection);
+        		connection.close();
+        	}
+        	
+        	binaryData.remove(domainKey);
+        	
+        	MVStore store = stores.remove(domainKey);
+        	
+        	if(null != store) {
+        		store.close();
+        	}
+        	
+        	progress.finish(domainKey, null);
+		}
+		
+		System.out.format("Exported domain:%s [%d/%d], objects:%d, records:%d, messages:%d, total:%d, took:%d ms\n", domainKey, position, totalDomains, stats.getIndexes(), stats.getRecords(), stats.getMessages(), stats.getTotal(), (System.currentTimeMillis() - began));
+		
+		if("db".equals(format)) {
+			System.out.format("\tDomain:%s documents new:%d, changed:%d, unchanged:%d\n", domainKey, stats.getAdded(), stats.getChanged(), stats.getUnchanged());
+		}
+	}
+	
+	protected void submit(List<Future<?>> pending, final ExportStats stats, final String domainKey, final String index, final int position, final int total) {
+		
+		if(null == workerPool) {
+			exportIsolated(stats, domainKey, index, position, total);
+			return;
+		}
+		
+		pending.add(workerPool.submit(new Runnable() {
+			@Override
+			public void run() {
+				exportIsolated(stats, domainKey, index, position, total);
+			}
+		}));
+	}
+	
+	protected void await(List<Future<?>> pending) throws InterruptedException {
+		
+		for(Future<?> f : pending) {
+			try {
+				f.get();
+			}catch(ExecutionException ex) {
+				ex.getCause().printStackTrace();
+			}
+		}
+		
+		pending.clear();
+	}
+	
+	protected void exportIsolated(ExportStats stats, String domainKey, String index, int position, int total) {
+		
+		ExportSink sink = null;
+		
+		try {
+			
+			sink = openSink(stats, domainKey, index);
+			export(sink, stats, domainKey, index, position, total);
 			
 		}catch(Exception ex) {
 			ex.printStackTrace();
 		}finally {
-			close();
+			try{if(null != sink) sink.close();}catch(Exception ex) {ex.printStackTrace();}
 		}
+	}
+	
+	protected ExportSink openSink(ExportStats stats, String domainKey, String index) throws SQLException, IOException {
 		
+		switch(format) {
+		case "db":
+			
+			if(partitions > 1) {
+				
+				List<ExportSink> sinks = new ArrayList<ExportSink>();
+				
+				try {
+					for(String dbName : dbNames(domainKey)) {
+						sinks.add(new DBExportSink(openConnection(dbName), domainKey, binaryData.get(domainKey), stats, totals));
+					}
+				}catch(SQLException ex) {
+					new PartitionedExportSink(sinks).close();
+					throw ex;
+				}
+				
+				return new PartitionedExportSink(sinks);
+			}
+			
+			return new DBExportSink(openConnection(domainKey), domainKey, binaryData.get(domainKey), stats, totals);
+		case "mvstore":
+			return new MVStoreExportSink(stores.get(domainKey));
+		case "copy":
+			return new CopyExportSink(ensureIndex(domainKey, index), destination, domainKey);
+		case "pack":
+			return new PackExportSink(ensureIndex(domainKey, index), String.format("%d-%04d", runId, sinkSequence.incrementAndGet()), segmentSize);
+		case "ndjson":
+			return new SegmentExportSink(ensureIndex(domainKey, index), String.format("%d-%04d", runId, sinkSequence.incrementAndGet()), segmentSize, compression);
+		default:
+			return new FileExportSink(ensureIndex(domainKey, index));
+		}
+	}
+	
+	protected boolean isBinaryData(Connection connection) throws SQLException {
+		
+		ResultSet columns = connection.getMetaData().getColumns(null, null, "EXPORTED", "DATA");
+		
+		try {
+			return columns.next() && columns.getInt("DATA_TYPE") == Types.BLOB;
+		}finally {
+			columns.close();
+		}
+	}
+	
+	protected Connection openConnection(String dbName) throws SQLException, IOException {
+		return DriverManager.getConnection(String.format("jdbc:h2:%s/%s;DB_CLOSE_ON_EXIT=FALSE", ensureOutput().getAbsolutePath(), dbName), "sa", "" );
+	}
+	
+	protected List<String> dbNames(String domainKey) {
+		
+		List<String> names = new ArrayList<String>();
+		
+		if(partitions <= 1) {
+			names.add(domainKey);
+			return names;
+		}
+		
+		for(int i=0;i<partitions;i++) {
+			names.add(PartitionedExportSink.partitionName(domainKey, i));
+		}
+		
+		return names;
 	}
 	
-	protected void export(Connection connection, PreparedStatement pstmt, String domainKey, String index) {
+	protected void export(ExportSink sink, final ExportStats stats, final String domainKey, final String index, final int position, final int total) {
 		
-		final long beginCount = totalExported;
+		long exported = 0;
 		final String itype = index.substring(0, 4); 
 		
 		try {			
 			
 			switch(itype) {
 			case "bskp":
-				System.out.format("\tProcessing [%d/%d] index:%s\n", currentIndex, totalIndexes, index);
+				System.out.format("\tProcessing [%d/%d] index:%s\n", position, total, index);
 				break;
 			case "rec_":
-				System.out.format("\tProcessing Record [%d/%d] index:%s\n", currentRIndex, totalRIndexes, index);
+				System.out.format("\tProcessing Record [%d/%d] index:%s\n", position, total, index);
 				break;
 			case "msg_":
-				System.out.format("\tProcessing Message [%d/%d] index:%s\n", currentMIndex, totalMIndexes, index);
+				System.out.format("\tProcessing Message [%d/%d] index:%s\n", position, total, index);
 				break;
 			}
 			
@@ -322,117 +586,470 @@ public class Exporter {
 			}else{
 				query = QueryBuilders.matchQuery("domainKey", domainKey);
 			}
-
-			SearchRequest search = new SearchRequest(index);
-			search.scroll(new TimeValue(keepAlive));
-			SearchSourceBuilder builder = new SearchSourceBuilder();
-			builder.query(query);
-			builder.size(fetchSize);
-			search.source(builder);
 			
-			SearchResponse response = client.search(search).actionGet();
+			final Long since = (null != sinceField) ? sink.loadWatermark(index, sinceField) : null;
+			final AtomicLong watermark = (null != sinceField) ? new AtomicLong(null != since ? since : Long.MIN_VALUE) : null;
 			
-			switch(itype) {
-			case "bskp":
-				System.out.format("\tExporting [%d/%d] index:%s, records: %s\n", currentIndex, totalIndexes, index, response.getHits().getTotalHits());
-				break;
-			case "rec_":
-				System.out.format("\tExporting Record [%d/%d] index:%s, records: %s\n", currentRIndex, totalRIndexes, index, response.getHits().getTotalHits());
-				break;
-			case "msg_":
-				System.out.format("\tExporting Message [%d/%d] index:%s, records: %s\n", currentMIndex, totalMIndexes, index, response.getHits().getTotalHits());
-				break;
+			if(null != since) {
+				System.out.format("\tExporting index:%s changes after %s:%d\n", index, sinceField, since);
+				query = QueryBuilders.boolQuery().must(query).filter(QueryBuilders.rangeQuery(sinceField).gte(since).format("epoch_millis"));
 			}
 
-			if(!process(connection, pstmt, domainKey, index, response)) {
-				return;
-			}
-			
+			final int shards = (!resume && shardTargeted) ? shardCount(index) : 1;
+			final int slices = (resume || shardTargeted || 1 == this.slices) ? 1 : (this.slices <= 0 ? shardCount(index) : this.slices);
 			
-			while(null != response.getScrollId()) {
-				
-				response = client.searchScroll(new SearchScrollRequest(response.getScrollId()).scroll(new TimeValue(60000))).get();
-				
-				if(!process(connection, pstmt, domainKey, index, response)) {
-					break;
-				}
+			if(shards > 1) {
+				exported = sliced(stats, domainKey, index, query, shards, true, watermark, position, total);
+			}else if(slices <= 1) {
+				exported = scroll(sink, stats, index, query, null, preference, 1, watermark, position, total);
+			}else {
+				exported = sliced(stats, domainKey, index, query, slices, false, watermark, position, total);
 			}
 			
+			if(null != watermark && watermark.get() > (null != since ? since : Long.MIN_VALUE)) {
+				sink.saveWatermark(index, sinceField, watermark.get());
+			}
 			
 		}catch(Exception ex) {
 			ex.printStackTrace();
 		}finally {
-			final long endCount = totalExported;
+			
+			progress.finish(domainKey, index);
+			
 			switch(itype) {
 			case "bskp":
-				System.out.format("\tExported [%d/%d] index:%s, records: %d\n", currentIndex, totalIndexes, index, (endCount - beginCount));
+				System.out.format("\tExported [%d/%d] index:%s, records: %d\n", position, total, index, exported);
 				break;
 			case "rec_":
-				System.out.format("\tExported Record [%d/%d] index:%s, records: %d\n", currentRIndex, totalRIndexes, index, (endCount - beginCount));
+				System.out.format("\tExported Record [%d/%d] index:%s, records: %d\n", position, total, index, exported);
 				break;
 			case "msg_":
-				System.out.format("\tExported Message [%d/%d] index:%s, records: %d\n", currentMIndex, totalMIndexes, index, (endCount - beginCount));
+				System.out.format("\tExported Message [%d/%d] index:%s, records: %d\n", position, total, index, exported);
 				break;
 			}
 		}
 		
 	}
 	
-	protected boolean process(Connection connection, PreparedStatement pstmt, String domainKey, String index, SearchResponse response) throws IOException, SQLException {
+	protected long sliced(final ExportStats stats, final String domainKey, final String index, final QueryBuilder query, final int slices, final boolean byShard, final AtomicLong watermark, final int position, final int total) throws Exception {
 		
+		final String unit = byShard ? "shards" : "slices";
 		
-		final String itype = index.substring(0, 4); 
-		SearchHit[] hits = response.getHits().getHits();
+		switch(index.substring(0, 4)) {
+		case "bskp":
+			System.out.format("\tExporting [%d/%d] index:%s, %s: %d\n", position, total, index, unit, slices);
+			break;
+		case "rec_":
+			System.out.format("\tExporting Record [%d/%d] index:%s, %s: %d\n", position, total, index, unit, slices);
+			break;
+		case "msg_":
+			System.out.format("\tExporting Message [%d/%d] index:%s, %s: %d\n", position, total, index, unit, slices);
+			break;
+		}
 		
-		if(null == hits || hits.length <= 0) return false;
+		final List<Future<Long>> pending = new ArrayList<Future<Long>>();
 		
-		System.out.print(".");
+		for(int i=0;i<slices;i++) {
+			
+			final SliceBuilder slice = byShard ? null : new SliceBuilder(i, slices);
+			final String preference = byShard ? shardPreference(i) : this.preference;
+			
+			pending.add(slicePool.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					
+					ExportSink sink = openSink(stats, domainKey, index);
+					
+					try {
+						return scroll(sink, stats, index, query, slice, preference, slices, watermark, position, total);
+					}finally {
+						sink.close();
+					}
+				}
+			}));
+		}
 		
-		for(SearchHit hit : hits) {
+		long exported = 0;
+		Throwable failure = null;
+		
+		for(Future<Long> f : pending) {
+			try {
+				exported += f.get();
+			}catch(ExecutionException ex) {
+				if(null == failure) failure = ex.getCause();
+				else ex.getCause().printStackTrace();
+			}
+		}
+		
+		if(failure instanceof Error) throw (Error) failure;
+		if(failure instanceof Exception) throw (Exception) failure;
+		if(null != failure) throw new RuntimeException(failure);
+		
+		return exported;
+	}
+	
+	protected String shardPreference(int shard) {
+		return null != preference ? String.format("_shards:%d|%s", shard, preference) : String.format("_shards:%d", shard);
+	}
+	
+	protected long scroll(ExportSink sink, ExportStats stats, String index, QueryBuilder query, SliceBuilder slice, String preference, int concurrent, AtomicLong watermark, int position, int total) throws Exception {
+		
+		if(resume) {
+			return searchAfter(sink, stats, index, query, watermark, position, total);
+		}
+		
+		final PageSizer sizer = pageSizer(index);
+		
+		SearchRequest search = new SearchRequest(index);
+		search.preference(preference);
+		SearchSourceBuilder builder = new SearchSourceBuilder();
+		builder.query(query);
+		builder.size((concurrent > 1 && pageBudget > 0) ? Math.max(minFetchSize, sizer.size() / concurrent) : sizer.size());
+		builder.trackTotalHits(true);
+		
+		if(null != slice) {
+			builder.slice(slice);
+		}
+		
+		if(null != watermark) {
+			builder.docValueField(sinceField, "epoch_millis");
+		}
+		
+		fetchSource(builder, index);
+		
+		search.source(builder);
+		
+		final ScrollManager.Scroll scroll = scrolls.open(search);
+		final SearchResponse first = scroll.getResponse();
+		sizer.record(first.getHits().getHits(), fetched(scroll.getStarted()));
+		
+		try {
 			
-			if(exportToDB) {
+			progress.expect(stats.getDomainKey(), index, first.getHits().getTotalHits().value);
+			
+			if(null != slice) {
+				if(debug) System.out.format("\tExporting slice [%d/%d] index:%s, records: %s\n", slice.getId() + 1, slice.getMax(), index, first.getHits().getTotalHits());
+			}else if(null != preference && preference.startsWith("_shards:")) {
+				if(debug) System.out.format("\tExporting shard %s index:%s, records: %s\n", preference, index, first.getHits().getTotalHits());
+			}else {
+				printExporting(index, position, total, first);
+			}
+			
+			PageSource source = new PageSource() {
 				
-				int sidx = 1;
+				private SearchResponse response = null;
 				
-				//DKEY, IDXNAME, IDXTYPE, DOCID, DATA
-				pstmt.setString(sidx++, domainKey);
-				pstmt.setString(sidx++, hit.getIndex());
-				pstmt.setString(sidx++, hit.getType());
-				pstmt.setString(sidx++, hit.getId());
-				pstmt.setCharacterStream(sidx++, new StringReader(hit.getSourceAsString()));
-				pstmt.addBatch();
+				@Override
+				public SearchHit[] next() throws Exception {
+					
+					if(null == response) {
+						response = first;
+					}else {
+						long began = System.nanoTime();
+						response = scroll.next();
+						if(null == response) return null;
+						sizer.record(response.getHits().getHits(), fetched(began));
+					}
 					
+					return response.getHits().getHits();
+				}
+			};
+			
+			return drain(sink, stats, index, source, null, watermark);
+			
+		}finally {
+			scroll.close();
+		}
+	}
+	
+	protected long searchAfter(ExportSink sink, ExportStats stats, final String index, final QueryBuilder query, AtomicLong watermark, final int position, final int total) throws Exception {
+		
+		Checkpoint saved = sink.loadCheckpoint(index);
+		
+		if(saved.isCompleted() && null != sinceField) {
+			saved = new Checkpoint(index);
+		}
+		
+		final Checkpoint checkpoint = saved;
+		
+		if(checkpoint.isCompleted()) {
+			System.out.format("\tSkipping completed index:%s, records: %d\n", index, checkpoint.getExported());
+			return 0;
+		}
+		
+		if(null != checkpoint.getSortValues()) {
+			System.out.format("\tResuming index:%s after %d records\n", index, checkpoint.getExported());
+		}
+		
+		final PageSizer sizer = pageSizer(index);
+		
+		PageSource source = new PageSource() {
+			
+			private Object[] after = checkpoint.getSortValues();
+			private boolean first = true;
+			
+			@Override
+			public SearchHit[] next() throws Exception {
 				
-			}else {
+				SearchRequest search = new SearchRequest(index);
+				search.preference(preference);
+				SearchSourceBuilder builder = new SearchSourceBuilder();
+				builder.query(query);
+				builder.size(sizer.size());
+				for(String field : sortField.split(",")) {
+					builder.sort(field.trim(), SortOrder.ASC);
+				}
+				builder.trackTotalHits(first);
+				
+				if(null != sinceField) {
+					builder.docValueField(sinceField, "epoch_millis");
+				}
+				
+				fetchSource(builder, index);
+				
+				if(null != after) {
+					builder.searchAfter(after);
+				}
+				
+				search.source(builder);
+				
+				long began = System.nanoTime();
+				SearchResponse response = backend.search(search);
+				SearchHit[] hits = response.getHits().getHits();
+				sizer.record(hits, fetched(began));
+				
+				if(first) {
+					first = false;
+					printExporting(index, position, total, response);
+					progress.expect(stats.getDomainKey(), index, response.getHits().getTotalHits().value - checkpoint.getExported());
+				}
 				
-				File indexFolder = ensureIndex(domainKey, index);
-				File typeFolder = ensureType(indexFolder, hit.getType());
-				File doc = new File(typeFolder, String.format("%s.json", hit.getId()));
-				Files.write(Paths.get(doc.getAbsolutePath()), hit.getSourceAsString().getBytes());
+				if(null != hits && hits.length > 0) {
+					after = hits[hits.length - 1].getSortValues();
+				}
 				
+				return hits;
 			}
+		};
+		
+		long exported = drain(sink, stats, index, source, checkpoint, watermark);
+		
+		checkpoint.setCompleted(true);
+		sink.flush(checkpoint);
+		
+		return exported;
+	}
+	
+	protected long fetched(long began) {
+		
+		long took = System.nanoTime() - began;
+		
+		fetchLatency.record(took);
+		
+		return TimeUnit.NANOSECONDS.toMillis(took);
+	}
+	
+	protected void printExporting(String index, int position, int total, SearchResponse response) {
+		
+		switch(index.substring(0, 4)) {
+		case "bskp":
+			System.out.format("\tExporting [%d/%d] index:%s, records: %s\n", position, total, index, response.getHits().getTotalHits());
+			break;
+		case "rec_":
+			System.out.format("\tExporting Record [%d/%d] index:%s, records: %s\n", position, total, index, response.getHits().getTotalHits());
+			break;
+		case "msg_":
+			System.out.format("\tExporting Message [%d/%d] index:%s, records: %s\n", position, total, index, response.getHits().getTotalHits());
+			break;
+		}
+	}
+	
+	protected long drain(ExportSink sink, ExportStats stats, String index, PageSource source, Checkpoint checkpoint, AtomicLong watermark) throws Exception {
+		
+		if(queueDepth > 0) {
+			return pipeline(sink, stats, index, source, checkpoint, watermark);
+		}
+		
+		long exported = 0;
+		SearchHit[] hits;
+		
+		while(null != (hits = source.next()) && hits.length > 0) {
+			throttle(hits);
+			exported += process(sink, stats, index, hits, checkpoint, watermark);
+		}
+		
+		return exported;
+	}
+	
+	protected long pipeline(final ExportSink sink, final ExportStats stats, final String index, PageSource source, final Checkpoint checkpoint, final AtomicLong watermark) throws Exception {
+		
+		final BlockingQueue<SearchHit[]> queue = new ArrayBlockingQueue<SearchHit[]>(queueDepth);
+		
+		final Future<Long> writer = writerPool.submit(new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				
+				long written = 0;
+				SearchHit[] hits;
+				
+				while((hits = queue.take()).length > 0) {
+					queued.decrement();
+					written += process(sink, stats, index, hits, checkpoint, watermark);
+				}
+				
+				return written;
+			}
+		});
+		
+		boolean fetched = false;
+		
+		try {
+			
+			SearchHit[] hits;
 			
-			++totalExported;
+			while(null != (hits = source.next()) && hits.length > 0) {
+				throttle(hits);
+				enqueue(queue, writer, hits);
+			}
+			
+			fetched = true;
+			
+		}finally {
+			
+			enqueue(queue, writer, END_OF_SCROLL);
+			
+			if(!fetched) {
+				try{writer.get();}catch(Exception ex) {ex.printStackTrace();}
+			}
+		}
 		
-			switch(itype) {
-			case "bskp":
-				++totalEIndexes;
-				break;
-			case "rec_":
-				++totalERecords;
-				break;
-			case "msg_":
-				++totalEMessages;
-				break;
+		return writer.get();
+	}
+	
+	protected void throttle(SearchHit[] hits) throws InterruptedException {
+		
+		long bytes = 0;
+		
+		for(SearchHit hit : hits) {
+			if(null != hit.getSourceRef()) {
+				bytes += hit.getSourceRef().length();
 			}
 		}
 		
-		if(exportToDB) {
-			pstmt.executeBatch();
-			connection.commit();
+		limiter.acquire(hits.length, bytes);
+	}
+	
+	protected void enqueue(BlockingQueue<SearchHit[]> queue, Future<Long> writer, SearchHit[] hits) throws InterruptedException, ExecutionException {
+		
+		while(!queue.offer(hits, 1, TimeUnit.SECONDS)) {
+			if(writer.isDone()) {
+				writer.get();
+				return;
+			}
+		}
+		
+		if(hits.length > 0) {
+			queued.increment();
+		}
+	}
+	
+	protected PageSizer pageSizer(String index) {
+		
+		String family = index;
+		
+		if(index.startsWith("rec_") || index.startsWith("msg_")) {
+			family = index.substring(0, index.lastIndexOf('_'));
+		}
+		
+		return pageSizers.computeIfAbsent(family, f -> new PageSizer(fetchSize, pageBudget, minFetchSize, maxFetchSize, keepAlive / 4));
+	}
+	
+	protected void fetchSource(SearchSourceBuilder builder, String index) {
+		
+		String[] includes = sourceFields(sourceIncludes, index);
+		String[] excludes = sourceFields(sourceExcludes, index);
+		
+		if(null != includes || null != excludes) {
+			builder.fetchSource(includes, excludes);
+		}
+	}
+	
+	protected String[] sourceFields(Map<String, Set<String>> patterns, String index) {
+		
+		Set<String> fields = new LinkedHashSet<String>();
+		
+		for(Map.Entry<String, Set<String>> me : patterns.entrySet()) {
+			if(Regex.simpleMatch(me.getKey(), index)) {
+				fields.addAll(me.getValue());
+			}
 		}
 		
-		return true;
+		return fields.isEmpty() ? null : fields.toArray(new String[fields.size()]);
+	}
+	
+	protected int shardCount(String index) {
+		
+		if(catalog.shards(index) > 0) {
+			return catalog.shards(index);
+		}
+		
+		if(null == client) {
+			return 1;
+		}
+		
+		GetSettingsResponse response = client.admin().indices().prepareGetSettings(index).get();
+		int shards = 1;
+		
+		for(ObjectCursor<Settings> settings : response.getIndexToSettings().values()) {
+			shards = Math.max(shards, settings.value.getAsInt("index.number_of_shards", 1));
+		}
+		
+		return shards;
+	}
+	
+	protected int process(ExportSink sink, ExportStats stats, String index, SearchHit[] hits, Checkpoint checkpoint, AtomicLong watermark) throws IOException, SQLException {
+		
+		if(null == hits || hits.length <= 0) return 0;
+		
+		Metrics metrics = Metrics.instance();
+		long bytes = 0;
+		long began = System.nanoTime();
+		
+		for(SearchHit hit : hits) {
+			
+			sink.write(hit);
+			
+			if(null != hit.getSourceRef()) {
+				bytes += hit.getSourceRef().length();
+			}
+			
+			if(null != watermark) {
+				DocumentField field = hit.field(sinceField);
+				if(null != field && null != field.getValue()) {
+					watermark.accumulateAndGet(Double.valueOf(field.getValue().toString()).longValue(), Math::max);
+				}
+			}
+			
+		}
+		
+		if(null != checkpoint) {
+			checkpoint.advance(hits[hits.length - 1].getSortValues(), hits.length);
+		}
+		
+		metrics.histogram(String.format("export.%s.write", format)).since(began);
+		
+		began = System.nanoTime();
+		sink.flush(checkpoint);
+		metrics.histogram(String.format("export.%s.flush", format)).since(began);
+		
+		metrics.meter("export.docs").mark(hits.length);
+		metrics.meter("export.bytes").mark(bytes);
+		
+		stats.add(index, hits.length);
+		totals.add(index, hits.length);
+		progress.advance(stats.getDomainKey(), index, hits.length);
+		
+		return hits.length;
 	}
 	
 	protected File ensureOutput() throws IOException {
@@ -458,27 +1075,18 @@ public class Exporter {
 		return file;
 	}
 	
-	protected File ensureType(File indexFolder, String type) throws IOException {
-		
-		File file = new File(indexFolder, type);
-		file.mkdirs();
-		
-		if(!file.exists()) throw new IOException(String.format("Unable to create directory %s", file.getAbsolutePath()));
-		
-		return file;
-	}
-	
 	protected Set<String> listDomains() throws IOException{
 		
 		Set<String> domainKeys = new HashSet<String>();
 		
-		SearchResponse response = client.prepareSearch("bskp_domains")
-				   .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
-				   .setFetchSource(new String[]{"domainKey"}, null)
-				   .setQuery(QueryBuilders.matchAllQuery())
-				   .setSize(10000)
-				   .execute()
-				   .actionGet();
+		SearchRequest search = new SearchRequest("bskp_domains");
+		search.searchType(SearchType.DFS_QUERY_THEN_FETCH);
+		search.source(new SearchSourceBuilder()
+				   .fetchSource(new String[]{"domainKey"}, null)
+				   .query(QueryBuilders.matchAllQuery())
+				   .size(10000));
+		
+		SearchResponse response = backend.search(search);
 
 		for (SearchHit hit : response.getHits()){
 			Map<String, Object> map = hit.getSourceAsMap();
@@ -488,30 +1096,23 @@ public class Exporter {
 		return domainKeys;
 	}
 	
-	protected Set<String> listIndexes(boolean records, String domainKey) throws IOException{
-		
-		Set<String> indexes = new HashSet<String>();
-		
-		String urlString = String.format("http://%s:%d/_cat/indices/%s_*_%s", host, searchPort, records ? "rec": "msg", domainKey.toLowerCase());
-		URL url = new URL(urlString);
-		
-		BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream()));
-		String line = null;
-		
-		while((line = reader.readLine()) != null) {
-			String index = line.split(" ")[2];
-			indexes.add(index);
-		}
-		
-		reader.close();
-		
-		return indexes;
-	}
-	
 	public void close() {
-		try{if(null != client) client.close();}catch(Exception ex) {ex.printStackTrace();}
-		try{if(null != pstmt && !pstmt.isClosed()) pstmt.close();}catch(Exception ex) {ex.printStackTrace();}
-		try{if(null != connection && !connection.isClosed()) connection.close();}catch(Exception ex) {ex.printStackTrace();}
+		try{progress.stop();}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != domainPool) domainPool.shutdownNow();}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != workerPool) workerPool.shutdownNow();}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != workerPool) workerPool.awaitTermination(keepAlive, TimeUnit.MILLISECONDS);}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != slicePool) slicePool.shutdownNow();}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != writerPool) writerPool.shutdownNow();}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != scrolls) scrolls.clearAll();}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != backend) backend.close();}catch(Exception ex) {ex.printStackTrace();}
+		for(Connection connection : connections) {
+			try{if(!connection.isClosed()) connection.close();}catch(Exception ex) {ex.printStackTrace();}
+		}
+		connections.clear();
+		for(MVStore store : stores.values()) {
+			try{store.close();}catch(Exception ex) {ex.printStackTrace();}
+		}
+		stores.clear();
 	} 
 
 	public String getClusterName() {
@@ -570,6 +1171,158 @@ public class Exporter {
 		this.keepAlive = keepAlive;
 	}
 
+	public long getPageBudget() {
+		return pageBudget;
+	}
+
+	public void setPageBudget(long pageBudget) {
+		this.pageBudget = pageBudget;
+	}
+
+	public int getMinFetchSize() {
+		return minFetchSize;
+	}
+
+	public void setMinFetchSize(int minFetchSize) {
+		this.minFetchSize = minFetchSize;
+	}
+
+	public int getMaxFetchSize() {
+		return maxFetchSize;
+	}
+
+	public void setMaxFetchSize(int maxFetchSize) {
+		this.maxFetchSize = maxFetchSize;
+	}
+
+	public int getDomainWorkers() {
+		return domainWorkers;
+	}
+
+	public void setDomainWorkers(int domainWorkers) {
+		this.domainWorkers = domainWorkers;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	public int getSlices() {
+		return slices;
+	}
+
+	public void setSlices(int slices) {
+		this.slices = slices;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public boolean isShardTargeted() {
+		return shardTargeted;
+	}
+
+	public void setShardTargeted(boolean shardTargeted) {
+		this.shardTargeted = shardTargeted;
+	}
+
+	public String getPreference() {
+		return preference;
+	}
+
+	public void setPreference(String preference) {
+		this.preference = preference;
+	}
+
+	public boolean isHttp() {
+		return http;
+	}
+
+	public void setHttp(boolean http) {
+		this.http = http;
+	}
+
+	public boolean isSniff() {
+		return sniff;
+	}
+
+	public void setSniff(boolean sniff) {
+		this.sniff = sniff;
+	}
+
+	public Importer getDestination() {
+		return destination;
+	}
+
+	public void setDestination(Importer destination) {
+		this.destination = destination;
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	public void setPartitions(int partitions) {
+		this.partitions = partitions;
+	}
+
+	public int getMaxScrolls() {
+		return maxScrolls;
+	}
+
+	public void setMaxScrolls(int maxScrolls) {
+		this.maxScrolls = maxScrolls;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	public String getSortField() {
+		return sortField;
+	}
+
+	public void setSortField(String sortField) {
+		this.sortField = sortField;
+	}
+
+	public String getSinceField() {
+		return sinceField;
+	}
+
+	public void setSinceField(String sinceField) {
+		this.sinceField = sinceField;
+	}
+
+	public Map<String, Set<String>> getSourceIncludes() {
+		return sourceIncludes;
+	}
+
+	public void setSourceIncludes(Map<String, Set<String>> sourceIncludes) {
+		this.sourceIncludes = sourceIncludes;
+	}
+
+	public Map<String, Set<String>> getSourceExcludes() {
+		return sourceExcludes;
+	}
+
+	public void setSourceExcludes(Map<String, Set<String>> sourceExcludes) {
+		this.sourceExcludes = sourceExcludes;
+	}
+
 	public boolean isDebug() {
 		return debug;
 	}
@@ -579,11 +1332,35 @@ public class Exporter {
 	}
 
 	public boolean isExportToDB() {
-		return exportToDB;
+		return "db".equals(format);
 	}
 
 	public void setExportToDB(boolean exportToDB) {
-		this.exportToDB = exportToDB;
+		this.format = exportToDB ? "db" : "file";
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	public void setFormat(String format) {
+		this.format = format;
+	}
+
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	public void setSegmentSize(long segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	public String getCompression() {
+		return compression;
+	}
+
+	public void setCompression(String compression) {
+		this.compression = compression;
 	}
 
 	public String getQueryString() {
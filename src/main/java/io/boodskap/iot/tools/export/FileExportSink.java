@@ -0,0 +1,113 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.search.SearchHit;
+import org.json.JSONObject;
+
+@SuppressWarnings("deprecation")
+public class FileExportSink implements ExportSink {
+
+	private static final String CHECKPOINT_FILE = "checkpoint.json";
+
+	private static final String WATERMARK_FILE = "watermark.json";
+
+	protected final File indexFolder;
+
+	private final Map<String, File> typeFolders = new HashMap<String, File>();
+
+	public FileExportSink(File indexFolder) {
+		this.indexFolder = indexFolder;
+	}
+
+	@Override
+	public void write(SearchHit hit) throws IOException, SQLException {
+
+		File doc = new File(ensureType(hit.getType()), String.format("%s.json", hit.getId()));
+
+		try(OutputStream out = Files.newOutputStream(doc.toPath())){
+			hit.getSourceRef().writeTo(out);
+		}
+	}
+
+	@Override
+	public void flush(Checkpoint checkpoint) throws IOException, SQLException {
+		if(null != checkpoint) {
+			replace(CHECKPOINT_FILE, checkpoint.toJSON());
+		}
+	}
+
+	@Override
+	public Checkpoint loadCheckpoint(String index) throws IOException, SQLException {
+
+		File file = new File(indexFolder, CHECKPOINT_FILE);
+
+		if(file.exists()) {
+			return Checkpoint.fromJSON(index, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		}
+
+		return new Checkpoint(index);
+	}
+
+	@Override
+	public Long loadWatermark(String index, String field) throws IOException, SQLException {
+
+		File file = new File(indexFolder, WATERMARK_FILE);
+
+		if(file.exists()) {
+			JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+			if(field.equals(json.optString("field"))) {
+				return json.getLong("watermark");
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public void saveWatermark(String index, String field, long watermark) throws IOException, SQLException {
+
+		JSONObject json = new JSONObject();
+		json.put("field", field);
+		json.put("watermark", watermark);
+
+		replace(WATERMARK_FILE, json.toString());
+	}
+
+	@Override
+	public void close() throws IOException, SQLException {
+	}
+
+	protected File ensureType(String type) throws IOException {
+
+		File file = typeFolders.get(type);
+
+		if(null != file) return file;
+
+		file = new File(indexFolder, type);
+		file.mkdirs();
+
+		if(!file.exists()) throw new IOException(String.format("Unable to create directory %s", file.getAbsolutePath()));
+
+		typeFolders.put(type, file);
+
+		return file;
+	}
+
+	protected void replace(String name, String content) throws IOException {
+
+		File temp = new File(indexFolder, String.format("%s.tmp", name));
+
+		Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		Files.move(temp.toPath(), new File(indexFolder, name).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
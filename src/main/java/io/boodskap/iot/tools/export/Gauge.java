@@ -0,0 +1,26 @@
+package io.boodskap.iot.tools.export;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Gauge implements GaugeMBean {
+
+	private final AtomicLong value = new AtomicLong();
+
+	public void increment() {
+		value.incrementAndGet();
+	}
+
+	public void decrement() {
+		value.decrementAndGet();
+	}
+
+	public void set(long value) {
+		this.value.set(value);
+	}
+
+	@Override
+	public long getValue() {
+		return value.get();
+	}
+
+}
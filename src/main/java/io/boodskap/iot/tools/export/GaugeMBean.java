@@ -0,0 +1,7 @@
+package io.boodskap.iot.tools.export;
+
+public interface GaugeMBean {
+
+	public long getValue();
+
+}
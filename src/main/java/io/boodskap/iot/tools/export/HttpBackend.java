@@ -0,0 +1,190 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+@SuppressWarnings("deprecation")
+public class HttpBackend implements Backend {
+
+	private static final int CONNECT_TIMEOUT = 30000;
+
+	private static final int READ_TIMEOUT = 300000;
+
+	private final String baseUrl;
+	private final Meter sent = Metrics.instance().meter("http.sent.bytes");
+	private final Meter received = Metrics.instance().meter("http.received.bytes");
+
+	public HttpBackend(String host, int port) {
+		this.baseUrl = String.format("http://%s:%d", host, port);
+	}
+
+	public static void setMaxConnections(int connections) {
+
+		if(null == System.getProperty("http.maxConnections")) {
+			System.setProperty("http.maxConnections", String.valueOf(Math.max(5, connections)));
+		}
+	}
+
+	private interface ResponseParser<T> {
+		public T parse(XContentParser parser) throws IOException;
+	}
+
+	@Override
+	public SearchResponse search(SearchRequest search) throws IOException {
+
+		StringBuilder path = new StringBuilder();
+		path.append('/').append(String.join(",", search.indices())).append("/_search?");
+
+		if(null != search.scroll()) {
+			path.append("scroll=").append(search.scroll().keepAlive().getStringRep()).append('&');
+		}
+
+		if(null != search.preference()) {
+			path.append("preference=").append(URLEncoder.encode(search.preference(), "UTF-8")).append('&');
+		}
+
+		if(search.searchType() == SearchType.DFS_QUERY_THEN_FETCH) {
+			path.append("search_type=dfs_query_then_fetch&");
+		}
+
+		path.setLength(path.length() - 1);
+
+		String body = null != search.source() ? Strings.toString(search.source()) : "{}";
+
+		return execute("POST", path.toString(), body.getBytes(StandardCharsets.UTF_8), SearchResponse::fromXContent);
+	}
+
+	@Override
+	public SearchResponse scroll(String scrollId, TimeValue keepAlive) throws IOException {
+
+		JSONObject body = new JSONObject();
+		body.put("scroll", keepAlive.getStringRep());
+		body.put("scroll_id", scrollId);
+
+		return execute("POST", "/_search/scroll", body.toString().getBytes(StandardCharsets.UTF_8), SearchResponse::fromXContent);
+	}
+
+	@Override
+	public void clearScroll(String scrollId) throws IOException {
+
+		JSONObject body = new JSONObject();
+		body.put("scroll_id", new JSONArray().put(scrollId));
+
+		execute("DELETE", "/_search/scroll", body.toString().getBytes(StandardCharsets.UTF_8), null, "application/json", false, true);
+	}
+
+	@Override
+	public BulkResponse bulk(BulkRequest bulk) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, bulk.estimatedSizeInBytes() / 4));
+		GZIPOutputStream gzip = new GZIPOutputStream(bytes, 64 * 1024);
+		SingleLineOutputStream source = new SingleLineOutputStream(gzip);
+
+		for(DocWriteRequest<?> request : bulk.requests()) {
+
+			if(!(request instanceof IndexRequest)) {
+				throw new IOException(String.format("Unsupported bulk operation %s", request.opType()));
+			}
+
+			IndexRequest index = (IndexRequest) request;
+
+			JSONObject meta = new JSONObject();
+			meta.put("_index", index.index());
+			meta.put("_type", index.type());
+			meta.put("_id", index.id());
+
+			gzip.write(new JSONObject().put("index", meta).toString().getBytes(StandardCharsets.UTF_8));
+			gzip.write('\n');
+			index.source().writeTo(source);
+			gzip.write('\n');
+		}
+
+		gzip.close();
+
+		return execute("POST", "/_bulk", bytes.toByteArray(), BulkResponse::fromXContent, "application/x-ndjson", true, false);
+	}
+
+	protected <T> T execute(String method, String path, byte[] body, ResponseParser<T> parser) throws IOException {
+		return execute(method, path, body, parser, "application/json", false, false);
+	}
+
+	protected <T> T execute(String method, String path, byte[] body, ResponseParser<T> parser, String contentType, boolean gzipped, boolean missingOk) throws IOException {
+
+		HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		conn.setRequestMethod(method);
+		conn.setInstanceFollowRedirects(false);
+		conn.setConnectTimeout(CONNECT_TIMEOUT);
+		conn.setReadTimeout(READ_TIMEOUT);
+		conn.setRequestProperty("Accept-Encoding", "gzip");
+		conn.setRequestProperty("Content-Type", contentType);
+
+		if(gzipped) {
+			conn.setRequestProperty("Content-Encoding", "gzip");
+		}
+
+		conn.setDoOutput(true);
+		conn.setFixedLengthStreamingMode(body.length);
+
+		try(OutputStream out = conn.getOutputStream()){
+			out.write(body);
+		}
+
+		sent.mark(body.length);
+
+		int status = conn.getResponseCode();
+		InputStream stream = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+		CountingInputStream counted = new CountingInputStream(null != stream ? stream : new ByteArrayInputStream(new byte[0]));
+
+		try(InputStream in = "gzip".equalsIgnoreCase(conn.getContentEncoding()) ? new GZIPInputStream(counted, 64 * 1024) : counted){
+
+			if(status >= 300 && !(status == 404 && missingOk)) {
+				String error = IOUtils.toString(in, StandardCharsets.UTF_8);
+				throw new IOException(String.format("%s %s failed with status %d, %s", method, path, status, error.length() > 1024 ? error.substring(0, 1024) : error));
+			}
+
+			if(null == parser) {
+				IOUtils.skip(in, Long.MAX_VALUE);
+				return null;
+			}
+
+			try(XContentParser content = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, in)){
+				return parser.parse(content);
+			}
+
+		}finally {
+			received.mark(counted.getByteCount());
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
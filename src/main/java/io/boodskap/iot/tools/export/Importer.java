@@ -5,8 +5,11 @@ import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.Connection;
@@ -14,43 +17,67 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.commons.io.IOUtils;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
 
 @SuppressWarnings("deprecation")
 public class Importer {
 	
 	private static final Importer instance = new Importer();
 	
+	private static final int DB_FETCH_SIZE = 1000;
+	
 	private String host = "localhost";
 	private int port = 9300;
 	private String clusterName;
 	private String nodeName;
 	private String outFolder = "data";
-	private boolean importFromDB = true;
+	private String format = "db";
 	private boolean importAllDomains = false;
-	private int bulkSize = 100;
+	private int bulkSize = 10000;
+	private long bulkBytes = 10 * 1024 * 1024;
+	private long bulkFlush = 5000;
 	private Set<String> domains = new HashSet<String>();
 	private boolean debug = false;
+	private final Progress progress = new Progress("Imported");
+	private final RateLimiter limiter = RateLimiter.get("import");
 	private boolean haltOnInsertFailure = false;
+	private boolean http = false;
+	private int bulkWorkers = 1;
+	private int bulkQueue = 2;
 	
 	
 	private PreBuiltTransportClient client;
-	private Connection connection = null;
-	private Statement pstmt = null;
+	private Backend backend;
+	private BulkEngine bulks;
+	private Set<Connection> connections = ConcurrentHashMap.newKeySet();
 	
 	public static void main(String[] args) throws Exception {
 		Importer imp = Importer.instance();
@@ -71,16 +98,27 @@ public class Importer {
 	
 	public void setup() throws ClassNotFoundException, SQLException, IOException {
 		
-		if(importFromDB) {
+		if("db".equals(format)) {
 			Class.forName("org.h2.Driver");
 		}
 
-		client= new PreBuiltTransportClient(
-				  Settings.builder().put("client.transport.sniff", false)
-				  					.put("node.name", nodeName)
-				                    .put("cluster.name", clusterName).build()) ;
+		if(http) {
+			
+			backend = new HttpBackend(host, port);
+			
+		}else {
+			
+			client= new PreBuiltTransportClient(
+					  Settings.builder().put("client.transport.sniff", false)
+					  					.put("node.name", nodeName)
+					                    .put("cluster.name", clusterName).build()) ;
+			
+			client.addTransportAddress(new TransportAddress(InetAddress.getByName(host), port));
+			
+			backend = new TransportBackend(client);
+		}
 		
-		client.addTransportAddress(new TransportAddress(InetAddress.getByName(host), port));
+		bulks = new BulkEngine(bulkWorkers, bulkQueue);
 		
 	}
 	
@@ -89,114 +127,282 @@ public class Importer {
 		
 		try {
 			
-			if(importFromDB) {
+			progress.setVerbose(debug);
+			progress.start();
+			
+			switch(format) {
+			case "db":
 				importFromDB();
-			}else {
+				break;
+			case "ndjson":
+				importFromSegments();
+				break;
+			case "pack":
+				importFromPacks();
+				break;
+			case "mvstore":
+				importFromStores();
+				break;
+			default:
 				importFromFS();
+				break;
 			}
 			
 		}catch(Exception ex) {
 			ex.printStackTrace();
 		}finally {
+			progress.stop();
 			close();
 		}
 		
 	}
 	
-	private void importFromDB() throws IOException, SQLException {
+	private void importFromDB() throws Exception {
 		
 		Set<String> domainDBs =  listDomainsDBs();
-		
-		String lastIndexName = "";
-		String lastIndexType = "";
-		long imported = -1;
+		Map<String, List<String>> partitioned = listDomainPartitions();
 		long totalImported = 0;
 		
+		for(List<String> partitions : partitioned.values()) {
+			domainDBs.removeAll(partitions);
+		}
+		
 		for(String domainDB : domainDBs) {
 			
-			long beginImported = totalImported;
+			final String domain = new File(domainDB).getName();
 			
 			System.out.format("Importing domain DB %s\n", domainDB);
 			
-	        connection = DriverManager.getConnection(String.format("jdbc:h2:%s", domainDB), "sa", "" );
-	        
+			long imported = importDB(domain, domainDB);
+			totalImported += imported;
+			
+    		bulks.await();
+    		
+    		System.out.format("\tImported %d records from domain %s\n", imported, domainDB);
+    		
+    		progress.finish(domain, null);
+		}
+		
+		for(Map.Entry<String, List<String>> me : partitioned.entrySet()) {
+			
+			final String domain = me.getKey();
+			final List<String> partitions = me.getValue();
+			
+			System.out.format("Importing domain %s from %d partitions\n", domain, partitions.size());
+			
+			ExecutorService pool = Executors.newFixedThreadPool(partitions.size());
+			List<Future<Long>> pending = new ArrayList<Future<Long>>();
+			long imported = 0;
+			
+			try {
+				
+				for(final String partition : partitions) {
+					pending.add(pool.submit(new Callable<Long>() {
+						@Override
+						public Long call() throws Exception {
+							return importDB(domain, partition);
+						}
+					}));
+				}
+				
+				for(Future<Long> f : pending) {
+					try {
+						imported += f.get();
+					}catch(ExecutionException ex) {
+						
+						pool.shutdownNow();
+						
+						Throwable failure = ex.getCause();
+						
+						if(failure instanceof Error) throw (Error) failure;
+						if(failure instanceof Exception) throw (Exception) failure;
+						throw new RuntimeException(failure);
+					}
+				}
+				
+			}finally {
+				pool.shutdownNow();
+			}
+			
+			totalImported += imported;
+			
+    		bulks.await();
+    		
+    		System.out.format("\tImported %d records from domain %s\n", imported, domain);
+    		
+    		progress.finish(domain, null);
+		}
+
+		System.out.format("\nImport finished, total imported records:%d\n", totalImported);
+	}
+	
+	private long importDB(String domain, String domainDB) throws IOException, SQLException {
+		
+		String lastIndexName = null;
+		String lastIndexType = null;
+		long imported = 0;
+		long totalImported = 0;
+		
+        Connection connection = DriverManager.getConnection(String.format("jdbc:h2:%s", domainDB), "sa", "" );
+        connections.add(connection);
+        
+        try {
+        	
 	        if(debug) System.out.println("DB opened, opening statement...");
 	        
-	        pstmt = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+	        Statement pstmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	        
+	        pstmt.execute("SET LAZY_QUERY_EXECUTION TRUE");
+	        pstmt.setFetchSize(Math.max(1, Math.min(bulkSize, DB_FETCH_SIZE)));
 	        
 	        if(debug) System.out.println("Statement opened, queriying records...");
 	        
-	        ResultSet result = pstmt.executeQuery("SELECT * FROM EXPORTED");
-	        List<IndexRequest> requests = new ArrayList<IndexRequest>();
+	        final boolean binaryData = isBinaryData(connection);
+	        
+	        ResultSet count = pstmt.executeQuery("SELECT COUNT(*) FROM EXPORTED");
+	        
+	        if(count.next()) {
+	        	progress.expect(domain, null, count.getLong(1));
+	        }
+	        
+	        count.close();
+	        
+	        ResultSet result = pstmt.executeQuery("SELECT IDXNAME, IDXTYPE, DOCID, DATA FROM EXPORTED ORDER BY DKEY, IDXNAME, IDXTYPE, DOCID");
+	        BulkBatch batch = newBatch();
+	        char[] buffer = new char[8192];
+	        StringBuilder chars = new StringBuilder();
 	        
 	        if(debug) System.out.println("Performing import...");
 	        
 	        while(result.next()) {
 	        	
-	        	String indexName = result.getString("IDXNAME");
-	        	String indexType = result.getString("IDXTYPE");
-	        	String docId = result.getString("DOCID");
-	        	Reader docstream = result.getCharacterStream("DATA");
-	        	byte[] data = IOUtils.toByteArray(docstream, Charset.defaultCharset());
+	        	String indexName = result.getString(1);
+	        	String indexType = result.getString(2);
+	        	String docId = result.getString(3);
 	        	
-	        	if(!lastIndexName.equals(indexName) || !lastIndexType.equals(indexType)) {
+	        	if(!indexName.equals(lastIndexName) || !indexType.equals(lastIndexType)) {
 	        		
-	        		if(imported != -1) {
-	            		System.out.format("\n\tImported %s[%s] records:%d\n", lastIndexName, lastIndexType, imported);	        			
+	        		if(null != lastIndexName) {
+	        			
+	        			if(!batch.isEmpty()) {
+	    					insert(domain, batch);
+	    					imported += batch.size();
+	    					totalImported += batch.size();
+	    					batch.clear();
+	        			}
+	        			
+	            		System.out.format("\tImported %s[%s] records:%d\n", lastIndexName, lastIndexType, imported);	        			
+	            		progress.finish(domain, lastIndexName);
 	        		}
 	        		
 	        		lastIndexName = indexName;
 	        		lastIndexType = indexType;
 	        		imported = 0;
 	        		
-	        		System.out.format("\tImporting %s[%s] ", indexName, indexType);
+	        		System.out.format("\tImporting %s[%s]\n", indexName, indexType);
 	        	}
 	        	
 				IndexRequest req = new IndexRequest(indexName, indexType, docId);
-				req.source(data, XContentType.JSON);
-				requests.add(req);
-	        	
-				if(result.isLast() || requests.size() >= bulkSize) {
-					insert(requests);
-					imported += requests.size();
-					totalImported += requests.size();
-					requests.clear();
-					System.out.print(".");
-				}
 				
-				if(result.isLast()) {
-            		System.out.format("\n\tImported %s[%s] records:%d\n", lastIndexName, lastIndexType, imported);	        								
+	        	if(binaryData) {
+	        		req.source(result.getBytes(4), XContentType.JSON);
+	        	}else {
+	        		Reader docstream = result.getCharacterStream(4);
+	        		try {
+	        			ByteBuffer data = utf8(docstream, buffer, chars);
+	        			req.source(data.array(), data.arrayOffset(), data.limit(), XContentType.JSON);
+	        		}finally {
+	        			docstream.close();
+	        		}
+	        	}
+	        	
+				batch.add(req);
+	        	
+				if(batch.isFull()) {
+					insert(domain, batch);
+					imported += batch.size();
+					totalImported += batch.size();
+					batch.clear();
 				}
 	        }
 	        
+	        result.close();
+	        
+	        if(null != lastIndexName) {
+	        	
+	        	if(!batch.isEmpty()) {
+					insert(domain, batch);
+					imported += batch.size();
+					totalImported += batch.size();
+					batch.clear();
+	        	}
+	        	
+        		System.out.format("\tImported %s[%s] records:%d\n", lastIndexName, lastIndexType, imported);	        								
+	        }
+	        
 	        pstmt.close();
-	        connection.close();
-			
-	        long endImported = totalImported;
-    		System.out.format("\tImported %d records from domain %s\n", (endImported - beginImported), domainDB);
+	        
+        }finally {
+        	connections.remove(connection);
+        	connection.close();
+        }
+        
+        return totalImported;
+	}
+	
+	private static ByteBuffer utf8(Reader reader, char[] buffer, StringBuilder chars) throws IOException {
+		
+		chars.setLength(0);
+		
+		for(int read; (read = reader.read(buffer)) != -1;) {
+			chars.append(buffer, 0, read);
 		}
-
-		System.out.format("\nImport finished, total imported records:%d\n", totalImported);
+		
+		return StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars));
 	}
 	
-	private void importFromFS() throws IOException {
+	private Map<String, List<String>> listDomainPartitions() throws IOException {
 		
-		long totalImported = 0;
-
-		List<File> domainFolders = new ArrayList<File>();
+		Map<String, List<String>> partitioned = new TreeMap<String, List<String>>();
 		
-		if(importAllDomains) {
-			domainFolders.addAll(listDomainFiles());
-		}else {
-			
-			for(String domain : domains) {
-				domainFolders.add(ensureDomainFolder(domain));
+		File manifests[] = outputFolder().listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return f.isFile() && f.getName().endsWith(PartitionedExportSink.MANIFEST_EXTENSION);
+			}
+		});
+		
+		if(null != manifests) {
+			for(File manifest : manifests) {
+				String domain = manifest.getName().substring(0, manifest.getName().length() - PartitionedExportSink.MANIFEST_EXTENSION.length());
+				partitioned.put(domain, PartitionedExportSink.readManifest(manifest));
 			}
 		}
 		
+		return partitioned;
+	}
+	
+	private boolean isBinaryData(Connection connection) throws SQLException {
+		
+		ResultSet columns = connection.getMetaData().getColumns(null, null, "EXPORTED", "DATA");
+		
+		try {
+			return columns.next() && columns.getInt("DATA_TYPE") == Types.BLOB;
+		}finally {
+			columns.close();
+		}
+	}
+	
+	private void importFromFS() throws IOException {
+		
+		long totalImported = 0;
+
+		List<File> domainFolders = listDomainFolders();
+		
 		for(File domainFolder : domainFolders) {
 			
 			long beginImported = totalImported;
+			final String domain = domainFolder.getName();
 			
 			System.out.format("Importing domain %s\n", domainFolder.getName());
 
@@ -210,53 +416,362 @@ public class Importer {
 					
 					long imported = 0;
 					
-	        		System.out.format("\tImporting %s[%s] ", indexFolder.getName(), indexTypeFolder.getName());
+	        		System.out.format("\tImporting %s[%s]\n", indexFolder.getName(), indexTypeFolder.getName());
 
 	        		List<Tuple<String, File>> documents = listDomainIndexTypeDocuments(indexTypeFolder);
+	        		
+	        		progress.expect(domain, indexFolder.getName(), documents.size());
+					
+					BulkBatch batch = newBatch();
 					
-					while(!documents.isEmpty()) {
+					for(Tuple<String, File> document : documents) {
 						
-						int end = documents.size() > bulkSize ? bulkSize : documents.size();
-						List<Tuple<String, File>> bdocs = documents.subList(0, end);
-						List<IndexRequest> requests = new ArrayList<IndexRequest>();
+						byte[] data = Files.readAllBytes(Paths.get(document.v2().getAbsolutePath()));
+						IndexRequest req = new IndexRequest(indexFolder.getName(), indexTypeFolder.getName(), document.v1());
+						req.source(data, XContentType.JSON);
+						batch.add(req);
 						
-						for(Tuple<String, File> document : bdocs) {
-							byte[] data = Files.readAllBytes(Paths.get(document.v2().getAbsolutePath()));
-							IndexRequest req = new IndexRequest(indexFolder.getName(), indexTypeFolder.getName(), document.v1());
-							req.source(data, XContentType.JSON);
-							requests.add(req);
+						if(batch.isFull()) {
+							insert(domain, batch);
+							imported += batch.size();
+							totalImported += batch.size();
+							batch.clear();
 						}
-						
-						insert(requests);
-						imported += requests.size();
-						totalImported += requests.size();
-						
-						bdocs.clear();
-						
-						System.out.print(".");
 					}
 					
-            		System.out.format("\n\tImported %s[%s] records:%d\n", indexFolder.getName(), indexTypeFolder.getName(), imported);	        								
+					if(!batch.isEmpty()) {
+						insert(domain, batch);
+						imported += batch.size();
+						totalImported += batch.size();
+						batch.clear();
+					}
+					
+            		System.out.format("\tImported %s[%s] records:%d\n", indexFolder.getName(), indexTypeFolder.getName(), imported);	        								
+				}
+				
+				progress.finish(domain, indexFolder.getName());
+			}
+			
+			long endImported = totalImported;
+    		bulks.await();
+    		
+    		System.out.format("\tImported %d records from domain %s\n", (endImported - beginImported), domainFolder.getName());
+    		
+    		progress.finish(domain, null);
+		}
+		
+		System.out.format("\nImport finished, total imported records:%d\n", totalImported);
+		
+	}
+	
+	private void importFromSegments() throws IOException {
+		
+		long totalImported = 0;
+
+		List<File> domainFolders = listDomainFolders();
+		
+		for(File domainFolder : domainFolders) {
+			
+			long beginImported = totalImported;
+			final String domain = domainFolder.getName();
+			
+			System.out.format("Importing domain %s\n", domainFolder.getName());
+
+			List<File> domainIndexes = listDomainIndexFiles(domainFolder);
+			
+			for(File indexFolder : domainIndexes) {
+				
+				long imported = 0;
+				
+        		System.out.format("\tImporting %s\n", indexFolder.getName());
+        		
+        		BulkBatch batch = newBatch();
+        		List<File> segments = listDomainIndexSegments(indexFolder);
+        		long expected = 0;
+        		
+        		for(File segment : segments) {
+        			
+        			long count = SegmentExportSink.count(segment);
+        			
+        			if(count < 0) {
+        				expected = -1;
+        				break;
+        			}
+        			
+        			expected += count;
+        		}
+        		
+        		if(expected >= 0) {
+        			progress.expect(domain, indexFolder.getName(), expected);
+        		}else if(debug) {
+        			System.out.format("\tNo segment counts for %s, its total is unknown\n", indexFolder.getName());
+        		}
+        		
+        		for(File segment : segments) {
+        			
+        			SegmentReader reader = new SegmentReader(segment);
+        			
+        			try {
+        				
+        				IndexRequest req;
+        				
+        				while(null != (req = reader.next())) {
+        					
+        					batch.add(req);
+        					
+        					if(batch.isFull()) {
+        						insert(domain, batch);
+        						imported += batch.size();
+        						totalImported += batch.size();
+        						batch.clear();
+        					}
+        				}
+        				
+        			}finally {
+        				reader.close();
+        			}
+        		}
+        		
+        		if(!batch.isEmpty()) {
+					insert(domain, batch);
+					imported += batch.size();
+					totalImported += batch.size();
+					batch.clear();
+        		}
+				
+        		System.out.format("\tImported %s records:%d\n", indexFolder.getName(), imported);	        								
+        		
+        		progress.finish(domain, indexFolder.getName());
+			}
+			
+			long endImported = totalImported;
+    		bulks.await();
+    		
+    		System.out.format("\tImported %d records from domain %s\n", (endImported - beginImported), domainFolder.getName());
+    		
+    		progress.finish(domain, null);
+		}
+		
+		System.out.format("\nImport finished, total imported records:%d\n", totalImported);
+		
+	}
+	
+	private void importFromPacks() throws IOException {
+		
+		long totalImported = 0;
+
+		List<File> domainFolders = listDomainFolders();
+		
+		for(File domainFolder : domainFolders) {
+			
+			long beginImported = totalImported;
+			final String domain = domainFolder.getName();
+			
+			System.out.format("Importing domain %s\n", domainFolder.getName());
+
+			List<File> domainIndexes = listDomainIndexFiles(domainFolder);
+			
+			for(File indexFolder : domainIndexes) {
+				
+				List<File> indexTypeFolders =  listDomainIndexTypes(indexFolder);
+				
+				for(File indexTypeFolder : indexTypeFolders) {
+					
+					long imported = 0;
+					
+	        		System.out.format("\tImporting %s[%s]\n", indexFolder.getName(), indexTypeFolder.getName());
+	        		
+	        		BulkBatch batch = newBatch();
+	        		
+	        		for(File pack : listDomainIndexTypePacks(indexTypeFolder)) {
+	        			
+	        			PackReader reader = new PackReader(pack);
+	        			
+	        			int size = reader.size();
+	        			
+	        			if(size >= 0) {
+	        				progress.expect(domain, indexFolder.getName(), size);
+	        			}else if(debug) {
+	        				System.out.format("\tNo document count in pack %s, its total is unknown\n", pack.getName());
+	        			}
+	        			
+	        			Tuple<String, byte[]> document;
+	        			
+	        			while(null != (document = reader.next())) {
+	        				
+							IndexRequest req = new IndexRequest(indexFolder.getName(), indexTypeFolder.getName(), document.v1());
+							req.source(document.v2(), XContentType.JSON);
+							batch.add(req);
+	        				
+	        				if(batch.isFull()) {
+	        					insert(domain, batch);
+	        					imported += batch.size();
+	        					totalImported += batch.size();
+	        					batch.clear();
+	        				}
+	        			}
+	        		}
+	        		
+	        		if(!batch.isEmpty()) {
+						insert(domain, batch);
+						imported += batch.size();
+						totalImported += batch.size();
+						batch.clear();
+	        		}
+					
+            		System.out.format("\tImported %s[%s] records:%d\n", indexFolder.getName(), indexTypeFolder.getName(), imported);	        								
 				}
+				
+				progress.finish(domain, indexFolder.getName());
 			}
 			
 			long endImported = totalImported;
+    		bulks.await();
+    		
     		System.out.format("\tImported %d records from domain %s\n", (endImported - beginImported), domainFolder.getName());
+    		
+    		progress.finish(domain, null);
 		}
 		
 		System.out.format("\nImport finished, total imported records:%d\n", totalImported);
 		
 	}
 	
-	private void insert(List<IndexRequest> requests) {
+	private void importFromStores() throws IOException {
 		
-		BulkRequestBuilder bulk = client.prepareBulk();
+		long totalImported = 0;
+
+		List<File> domainFiles = listDomainFolders();
+		
+		for(File domainFile : domainFiles) {
+			
+			long beginImported = totalImported;
+			final String domain = domainFile.getName().substring(0, domainFile.getName().length() - MVStoreExportSink.EXTENSION.length());
+			
+			System.out.format("Importing domain store %s\n", domainFile.getName());
+			
+			MVStore store = new MVStore.Builder().fileName(domainFile.getAbsolutePath()).readOnly().open();
+			
+			try {
+				
+				for(String name : store.getMapNames()) {
+					
+					if(!MVStoreExportSink.isDocumentMap(name)) continue;
+					
+					String indexName = name.substring(0, name.lastIndexOf('/'));
+					String indexType = name.substring(name.lastIndexOf('/') + 1);
+					long imported = 0;
+					
+	        		System.out.format("\tImporting %s[%s]\n", indexName, indexType);
+	        		
+	        		MVMap<String, byte[]> map = store.openMap(name);
+	        		
+	        		progress.expect(domain, indexName, map.sizeAsLong());
+	        		Cursor<String, byte[]> cursor = map.cursor(null);
+	        		BulkBatch batch = newBatch();
+	        		
+	        		while(cursor.hasNext()) {
+	        			
+	        			String docId = cursor.next();
+	        			
+						IndexRequest req = new IndexRequest(indexName, indexType, docId);
+						req.source(cursor.getValue(), XContentType.JSON);
+						batch.add(req);
+	        			
+	        			if(batch.isFull() || !cursor.hasNext()) {
+        					insert(domain, batch);
+        					imported += batch.size();
+        					totalImported += batch.size();
+        					batch.clear();
+	        			}
+	        		}
+	        		
+            		System.out.format("\tImported %s[%s] records:%d\n", indexName, indexType, imported);	        								
+            		
+            		progress.finish(domain, indexName);
+				}
+				
+			}finally {
+				store.close();
+			}
+			
+			long endImported = totalImported;
+    		bulks.await();
+    		
+    		System.out.format("\tImported %d records from domain store %s\n", (endImported - beginImported), domainFile.getName());
+    		
+    		progress.finish(domain, null);
+		}
+		
+		System.out.format("\nImport finished, total imported records:%d\n", totalImported);
+		
+	}
+	
+	protected Future<?> insert(String domain, BulkBatch batch) {
+		return insert(domain, batch.getRequests());
+	}
+	
+	protected Future<?> insert(final String domain, List<IndexRequest> requests) {
+		
+		final List<IndexRequest> batch = new ArrayList<IndexRequest>(requests);
+		
+		return bulks.submit(() -> bulk(domain, batch));
+	}
+	
+	protected void bulk(String domain, List<IndexRequest> requests) {
+		
+		BulkRequest bulk = new BulkRequest();
 		
 		requests.forEach(r -> {bulk.add(r);});
 		
-		BulkResponse res = bulk.get();
+		Metrics metrics = Metrics.instance();
+		
+		try {
+			limiter.acquire(requests.size(), bulk.estimatedSizeInBytes());
+		}catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+		
+		long began = System.nanoTime();
+		
+		BulkResponse res;
+		
+		try {
+			res = backend.bulk(bulk);
+		}catch(IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		
+		metrics.histogram("import.bulk").since(began);
+		metrics.meter("import.docs").mark(requests.size());
+		metrics.meter("import.bytes").mark(bulk.estimatedSizeInBytes());
+		
+		String index = null;
+		int count = 0;
+		
+		for(IndexRequest request : requests) {
+			if(!request.index().equals(index)) {
+				if(count > 0) progress.advance(domain, index, count);
+				index = request.index();
+				count = 0;
+			}
+			++count;
+		}
+		
+		if(count > 0) progress.advance(domain, index, count);
 		
 		if(res.hasFailures()) {
+			
+			for(BulkItemResponse item : res.getItems()) {
+				if(item.isFailed()) {
+					metrics.meter("import.bulk.failures").mark(1);
+					if(item.status() == RestStatus.TOO_MANY_REQUESTS) {
+						metrics.meter("import.bulk.rejections").mark(1);
+					}
+				}
+			}
+			
 			if(haltOnInsertFailure) {
 				throw new RuntimeException(res.buildFailureMessage());
 			}else {
@@ -266,9 +781,12 @@ public class Importer {
 	}
 	
 	public void close() {
-		try{if(null != client) client.close();}catch(Exception ex) {ex.printStackTrace();}
-		try{if(null != pstmt && !pstmt.isClosed()) pstmt.close();}catch(Exception ex) {ex.printStackTrace();}
-		try{if(null != connection && !connection.isClosed()) connection.close();}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != bulks) bulks.close();}catch(Exception ex) {ex.printStackTrace();}
+		try{if(null != backend) backend.close();}catch(Exception ex) {ex.printStackTrace();}
+		for(Connection connection : connections) {
+			try{if(!connection.isClosed()) connection.close();}catch(Exception ex) {ex.printStackTrace();}
+		}
+		connections.clear();
 	}
 
 	protected File outputFolder(){
@@ -276,14 +794,26 @@ public class Importer {
 		return new File(out, "elastic");
 	}
 	
+	protected String domainFileExtension() {
+		
+		switch(format) {
+		case "db":
+			return ".mv.db";
+		case "mvstore":
+			return MVStoreExportSink.EXTENSION;
+		default:
+			return "";
+		}
+	}
+	
 	protected File ensureDomainFolder(String domainKey) throws IOException {
 		
 		File root = outputFolder();
-		File domain = new File(root, String.format("%s%s", domainKey, importFromDB ? ".mv.db": ""));
+		File domain = new File(root, String.format("%s%s", domainKey, domainFileExtension()));
 		
 		if(!domain.exists()) throw new FileNotFoundException(domain.getAbsolutePath());
 
-		if(importFromDB) {
+		if(!domainFileExtension().isEmpty()) {
 			if(!domain.isFile()) throw new IOException(String.format("Invalid domain DB %s", domain.getAbsolutePath()));
 		}else {
 			if(!domain.isDirectory()) throw new IOException(String.format("Invalid domain folder %s", domain.getAbsolutePath()));
@@ -292,6 +822,22 @@ public class Importer {
 		return domain;
 	}
 	
+	protected List<File> listDomainFolders() throws IOException {
+
+		List<File> domainFolders = new ArrayList<File>();
+		
+		if(importAllDomains) {
+			domainFolders.addAll(listDomainFiles());
+		}else {
+			
+			for(String domain : domains) {
+				domainFolders.add(ensureDomainFolder(domain));
+			}
+		}
+		
+		return domainFolders;
+	}
+	
 	protected List<File> listDomainFiles() throws IOException {
 		
 		List<File> domains = new ArrayList<>();
@@ -301,8 +847,8 @@ public class Importer {
 		File folders[] = root.listFiles(new FileFilter() {
 			@Override
 			public boolean accept(File f) {
-				if(importFromDB) {
-					return f.isFile() && f.getName().endsWith(".mv.db");
+				if(!domainFileExtension().isEmpty()) {
+					return f.isFile() && f.getName().endsWith(domainFileExtension());
 				}else {
 					return f.isDirectory();
 				}
@@ -370,6 +916,44 @@ public class Importer {
 		return indexes;
 	}
 	
+	protected List<File> listDomainIndexSegments(File indexFolder) throws IOException {
+		
+		List<File> segments = new ArrayList<>();
+		
+		File files[] = indexFolder.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return SegmentExportSink.isSegment(f);
+			}
+		});
+		
+		if(null != files && files.length > 0) {
+			segments.addAll(Arrays.asList(files));
+			Collections.sort(segments);
+		}
+		
+		return segments;
+	}
+	
+	protected List<File> listDomainIndexTypePacks(File indexTypeFolder) throws IOException {
+		
+		List<File> packs = new ArrayList<>();
+		
+		File files[] = indexTypeFolder.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return PackWriter.isPack(f);
+			}
+		});
+		
+		if(null != files && files.length > 0) {
+			packs.addAll(Arrays.asList(files));
+			Collections.sort(packs);
+		}
+		
+		return packs;
+	}
+	
 	protected List<Tuple<String, File>> listDomainIndexTypeDocuments(File indexTypeFolder){
 		
 		List<Tuple<String, File>> documents = new ArrayList<>();
@@ -456,11 +1040,19 @@ public class Importer {
 	}
 
 	public boolean isImportFromDB() {
-		return importFromDB;
+		return "db".equals(format);
 	}
 
 	public void setImportFromDB(boolean importFromDB) {
-		this.importFromDB = importFromDB;
+		this.format = importFromDB ? "db" : "file";
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	public void setFormat(String format) {
+		this.format = format;
 	}
 
 	public boolean isImportAllDomains() {
@@ -483,4 +1075,48 @@ public class Importer {
 		this.haltOnInsertFailure = haltOnInsertFailure;
 	}
 
+	protected BulkBatch newBatch() {
+		return new BulkBatch(bulkSize, bulkBytes, bulkFlush);
+	}
+	
+	public long getBulkBytes() {
+		return bulkBytes;
+	}
+
+	public void setBulkBytes(long bulkBytes) {
+		this.bulkBytes = bulkBytes;
+	}
+
+	public long getBulkFlush() {
+		return bulkFlush;
+	}
+
+	public void setBulkFlush(long bulkFlush) {
+		this.bulkFlush = bulkFlush;
+	}
+
+	public int getBulkWorkers() {
+		return bulkWorkers;
+	}
+
+	public void setBulkWorkers(int bulkWorkers) {
+		this.bulkWorkers = bulkWorkers;
+	}
+
+	public int getBulkQueue() {
+		return bulkQueue;
+	}
+
+	public void setBulkQueue(int bulkQueue) {
+		this.bulkQueue = bulkQueue;
+	}
+
+	public boolean isHttp() {
+		return http;
+	}
+
+	public void setHttp(boolean http) {
+		this.http = http;
+	}
+
 }
@@ -0,0 +1,128 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class IndexCatalog {
+
+	private final Map<String, long[]> entries = new ConcurrentHashMap<String, long[]>();
+	private boolean loaded = false;
+
+	public IndexCatalog() {
+	}
+
+	public void load(String host, int port) throws IOException {
+
+		URL url = new URL(String.format("http://%s:%d/_cat/indices?format=json&bytes=b&h=index,pri,docs.count,store.size", host, port));
+		InputStream in = url.openStream();
+
+		try {
+
+			JSONArray rows = new JSONArray(IOUtils.toString(in, StandardCharsets.UTF_8));
+
+			for(int i=0;i<rows.length();i++) {
+
+				JSONObject row = rows.getJSONObject(i);
+				String index = row.getString("index");
+
+				entries.put(index, new long[] {row.optLong("docs.count", -1), row.optLong("store.size", -1), row.optLong("pri", -1)});
+			}
+
+			loaded = true;
+
+		}finally {
+			in.close();
+		}
+	}
+
+	public Set<String> list(String prefix, String domainKey) throws IOException {
+
+		if(!loaded) throw new IOException("Index catalog is not available");
+
+		String suffix = String.format("_%s", domainKey.toLowerCase());
+		Set<String> indexes = new TreeSet<String>();
+
+		for(String index : entries.keySet()) {
+			if(index.startsWith(prefix) && index.endsWith(suffix)) {
+				indexes.add(index);
+			}
+		}
+
+		return indexes;
+	}
+
+	public List<String> largestFirst(Collection<String> indexes) {
+
+		List<String> ordered = new ArrayList<String>();
+
+		for(String index : indexes) {
+			if(!isEmpty(index)) {
+				ordered.add(index);
+			}
+		}
+
+		ordered.sort(Comparator.comparingLong((String index) -> bytes(index)).reversed());
+
+		return ordered;
+	}
+
+	public Map<String, Long> domainBytes() {
+
+		Map<String, Long> domains = new HashMap<String, Long>();
+
+		for(Map.Entry<String, long[]> me : entries.entrySet()) {
+
+			String index = me.getKey();
+			int split = index.indexOf('_', index.indexOf('_') + 1);
+
+			if((!index.startsWith("rec_") && !index.startsWith("msg_")) || split < 0) continue;
+
+			domains.merge(index.substring(split + 1), Math.max(0, me.getValue()[1]), Long::sum);
+		}
+
+		return domains;
+	}
+
+	public boolean isEmpty(String index) {
+		return docs(index) == 0;
+	}
+
+	public long docs(String index) {
+		long[] entry = entries.get(index.toLowerCase());
+		return null != entry ? entry[0] : -1;
+	}
+
+	public boolean isListed(String index) {
+		return entries.containsKey(index.toLowerCase());
+	}
+
+	public long bytes(String index) {
+		long[] entry = entries.get(index.toLowerCase());
+		return null != entry ? entry[1] : -1;
+	}
+
+	public int shards(String index) {
+		long[] entry = entries.get(index.toLowerCase());
+		return null != entry ? (int) entry[2] : -1;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+}
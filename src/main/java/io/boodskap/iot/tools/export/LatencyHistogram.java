@@ -0,0 +1,99 @@
+package io.boodskap.iot.tools.export;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+	private static final int BUCKETS = 48;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+
+		long micros = Math.max(0, nanos / 1000);
+
+		buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+		count.increment();
+		total.add(micros);
+		max.accumulateAndGet(micros, Math::max);
+	}
+
+	public void since(long began) {
+		record(System.nanoTime() - began);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long n = count.sum();
+		return n > 0 ? (total.sum() / (double) n) / 1000 : 0;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return percentile(0.50);
+	}
+
+	@Override
+	public double getP90Millis() {
+		return percentile(0.90);
+	}
+
+	@Override
+	public double getP99Millis() {
+		return percentile(0.99);
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return max.get() / 1000.0;
+	}
+
+	public double percentile(double p) {
+
+		long n = count.sum();
+
+		if(n <= 0) return 0;
+
+		long rank = (long) Math.ceil(n * p);
+		long seen = 0;
+
+		for(int i=0;i<BUCKETS;i++) {
+			
+			long bucket = buckets.get(i);
+			
+			if(seen + bucket >= rank) {
+				double lower = i > 0 ? (1L << (i - 1)) : 0;
+				double upper = Math.min(max.get(), (1L << i) - 1);
+				return (lower + (upper - lower) * (rank - seen) / bucket) / 1000.0;
+			}
+			
+			seen += bucket;
+		}
+
+		return getMaxMillis();
+	}
+
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		json.put("count", getCount());
+		json.put("mean", getMeanMillis());
+		json.put("p50", getP50Millis());
+		json.put("p90", getP90Millis());
+		json.put("p99", getP99Millis());
+		json.put("max", getMaxMillis());
+		return json;
+	}
+
+}
@@ -0,0 +1,17 @@
+package io.boodskap.iot.tools.export;
+
+public interface LatencyHistogramMBean {
+
+	public long getCount();
+
+	public double getMeanMillis();
+
+	public double getP50Millis();
+
+	public double getP90Millis();
+
+	public double getP99Millis();
+
+	public double getMaxMillis();
+
+}
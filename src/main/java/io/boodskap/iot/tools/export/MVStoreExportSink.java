@@ -0,0 +1,95 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+@SuppressWarnings("deprecation")
+public class MVStoreExportSink implements ExportSink {
+	
+	public static final String EXTENSION = ".mvs";
+	
+	public static final String CHECKPOINTS_MAP = "__checkpoints";
+	
+	public static final String WATERMARKS_MAP = "__watermarks";
+	
+	private final MVStore store;
+	
+	private String lastName = "";
+	private MVMap<String, byte[]> lastMap;
+
+	public MVStoreExportSink(MVStore store) {
+		this.store = store;
+	}
+	
+	public static MVStore open(String fileName) {
+		return new MVStore.Builder()
+				.fileName(fileName)
+				.compress()
+				.autoCommitBufferSize(16 * 1024)
+				.cacheSize(64)
+				.open();
+	}
+	
+	public static String mapName(String index, String type) {
+		return String.format("%s/%s", index, type);
+	}
+	
+	public static boolean isDocumentMap(String name) {
+		return !name.startsWith("__");
+	}
+
+	@Override
+	public void write(SearchHit hit) throws IOException, SQLException {
+		
+		String name = mapName(hit.getIndex(), hit.getType());
+		
+		if(!lastName.equals(name)) {
+			lastMap = store.openMap(name);
+			lastName = name;
+		}
+		
+		lastMap.put(hit.getId(), BytesReference.toBytes(hit.getSourceRef()));
+	}
+
+	@Override
+	public void flush(Checkpoint checkpoint) throws IOException, SQLException {
+		
+		if(null != checkpoint) {
+			MVMap<String, String> checkpoints = store.openMap(CHECKPOINTS_MAP);
+			checkpoints.put(checkpoint.getIndex(), checkpoint.toJSON());
+			store.commit();
+		}
+	}
+
+	@Override
+	public Checkpoint loadCheckpoint(String index) throws IOException, SQLException {
+		
+		MVMap<String, String> checkpoints = store.openMap(CHECKPOINTS_MAP);
+		String json = checkpoints.get(index);
+		
+		return null != json ? Checkpoint.fromJSON(index, json) : new Checkpoint(index);
+	}
+
+	@Override
+	public Long loadWatermark(String index, String field) throws IOException, SQLException {
+		MVMap<String, Long> watermarks = store.openMap(WATERMARKS_MAP);
+		return watermarks.get(mapName(index, field));
+	}
+
+	@Override
+	public void saveWatermark(String index, String field, long watermark) throws IOException, SQLException {
+		MVMap<String, Long> watermarks = store.openMap(WATERMARKS_MAP);
+		watermarks.put(mapName(index, field), watermark);
+		store.commit();
+	}
+
+	@Override
+	public void close() throws IOException, SQLException {
+	}
+
+}
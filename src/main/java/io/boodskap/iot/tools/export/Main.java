@@ -1,7 +1,10 @@
 package io.boodskap.iot.tools.export;
 
+import java.io.File;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
@@ -19,7 +22,7 @@ public class Main {
 	
 	static {
 		
-		opts.addRequiredOption("t", "target", true, "Target mode <export | import | curate> (export)");
+		opts.addRequiredOption("t", "target", true, "Target mode <export | copy | import | curate> (export)");
 		
 		opts.addOption("n", "node", true, "Elasticsearch Node Name");
 		opts.addOption("c", "cluster", true, "Elasticsearch Cluster Name");
@@ -27,16 +30,49 @@ public class Main {
 		opts.addOption("p", "port", true, "Elasticsearch transport port (9300)");
 		opts.addOption("sp", "sport", true, "Elasticsearch search port (9200)");
 		opts.addOption("q", "query", true, "Filter documents by query string");
-		opts.addOption("s", "size", true, "Fetch size (5000) for exporting, Batch size for importing (100)");
+		opts.addOption("s", "size", true, "Fetch size (5000) for exporting, Maximum documents per bulk for importing (10000)");
 		opts.addOption("a", "alive", true, "Keepalive in millis (60000)");
 		opts.addOption("o", "out", true, "Output/Input directory (data)");
-		opts.addOption("f", "format", true, "Exrt/Import Format <file|db> (db)");
+		opts.addOption("f", "format", true, "Exrt/Import Format <file|db|ndjson|pack|mvstore> (db)");
 		opts.addOption("v", "verbose", false, "Verbose mode (false)");
+		opts.addOption("w", "workers", true, "Number of indexes exported concurrently (1)");
+		opts.addOption("k", "dworkers", true, "Number of domains exported concurrently (1)");
 		
 		opts.addOption(Option.builder("d").longOpt("domains").hasArg().optionalArg(true).desc("Comma separated domain keys (all)").build());
 		opts.addOption(Option.builder("i").longOpt("indexes").hasArg().optionalArg(true).desc("Comma separated index names (all)").build());
 		opts.addOption(Option.builder("r").longOpt("records").hasArg().optionalArg(true).desc("Comma separated record ids (all)").build());
 		opts.addOption(Option.builder("m").longOpt("messages").hasArg().optionalArg(true).desc("Comma separated message ids (all)").build());
+		opts.addOption(Option.builder().longOpt("slices").hasArg().optionalArg(true).desc("Number of parallel scroll slices per index, shard count when no value is given (1)").build());
+		opts.addOption(Option.builder().longOpt("shards").desc("Export each index with one scroll per shard (preference _shards:N) instead of slices (false)").build());
+		opts.addOption(Option.builder().longOpt("preference").hasArg().desc("Search preference added to every scroll, e.g. _local, _only_nodes:rack:b or _prefer_nodes:node-2").build());
+		opts.addOption(Option.builder().longOpt("http").desc("Talk to Elasticsearch over pooled, gzip compressed HTTP on the search port instead of the transport client (false)").build());
+		opts.addOption(Option.builder().longOpt("sniff").desc("Let the transport client discover and spread requests over all data nodes (false)").build());
+		opts.addOption(Option.builder().longOpt("queue").hasArg().desc("Scroll pages buffered between fetching and writing, 0 to disable pipelining (2)").build());
+		opts.addOption(Option.builder().longOpt("scrolls").hasArg().desc("Maximum scroll contexts kept open on the cluster at once, 0 for no limit (100)").build());
+		opts.addOption(Option.builder().longOpt("resume").desc("Page with search_after and checkpoint every index so a restarted export resumes where it stopped (false)").build());
+		opts.addOption(Option.builder().longOpt("sort").hasArg().desc("Comma separated doc valued sort fields used by --resume, the last one must be unique, e.g. createdstamp,id (required with --resume)").build());
+		opts.addOption(Option.builder().longOpt("since").hasArg().desc("Timestamp field for incremental exports, only documents newer than the last run are exported").build());
+		opts.addOption(Option.builder().longOpt("partitions").hasArg().desc("Spread each domain of the db format across this many DB files by document id, imported in parallel (1)").build());
+		opts.addOption(Option.builder().longOpt("compress").hasArg().desc("Segment compression for ndjson format <gzip|none> (gzip)").build());
+		opts.addOption(Option.builder().longOpt("segment").hasArg().desc("Segment size in MB for ndjson and pack formats (256)").build());
+		opts.addOption(Option.builder().longOpt("includes").hasArg().desc("Source fields to export per index pattern, <pattern=field,field;pattern=field> (all)").build());
+		opts.addOption(Option.builder().longOpt("excludes").hasArg().desc("Source fields to skip per index pattern, <pattern=field,field;pattern=field> (none)").build());
+		opts.addOption(Option.builder().longOpt("budget").hasArg().desc("Adapt the fetch size per index to keep each page near this many MB, 0 for a fixed fetch size (0)").build());
+		opts.addOption(Option.builder().longOpt("minsize").hasArg().desc("Smallest adaptive fetch size (100)").build());
+		opts.addOption(Option.builder().longOpt("maxsize").hasArg().desc("Largest adaptive fetch size (10000)").build());
+		opts.addOption(Option.builder().longOpt("rate").hasArg().desc("Limit scroll fetches and bulk inserts to this many documents per second, 0 for no limit (0)").build());
+		opts.addOption(Option.builder().longOpt("bandwidth").hasArg().desc("Limit scroll fetches and bulk inserts to this many MB of source per second, 0 for no limit (0)").build());
+		opts.addOption(Option.builder().longOpt("limits").hasArg().desc("Properties file watched for rate and bandwidth changes while running, keys <rate | bandwidth | export.rate | import.bandwidth ..>").build());
+		opts.addOption(Option.builder().longOpt("metrics").hasArg().desc("Append a JSON line of metrics to this file periodically, JMX is always available").build());
+		opts.addOption(Option.builder().longOpt("interval").hasArg().desc("Seconds between metrics dumps (10)").build());
+		opts.addOption(Option.builder().longOpt("dhost").hasArg().desc("Destination Elasticsearch host for the copy target").build());
+		opts.addOption(Option.builder().longOpt("dport").hasArg().desc("Destination Elasticsearch transport port (9300), search port with --http (9200)").build());
+		opts.addOption(Option.builder().longOpt("dcluster").hasArg().desc("Destination Elasticsearch Cluster Name (same as -c)").build());
+		opts.addOption(Option.builder().longOpt("dnode").hasArg().desc("Destination Elasticsearch Node Name (same as -n)").build());
+		opts.addOption(Option.builder().longOpt("bulkmb").hasArg().desc("Target bulk request size in MB on import and copy, counted from the raw document bytes (10)").build());
+		opts.addOption(Option.builder().longOpt("bulkflush").hasArg().desc("Send a partly filled bulk once its first document is this many seconds old, checked as documents are added (5)").build());
+		opts.addOption(Option.builder().longOpt("bulks").hasArg().desc("Concurrent bulk requests in flight on import and copy (1)").build());
+		opts.addOption(Option.builder().longOpt("bulkqueue").hasArg().desc("Bulk requests queued behind the in flight ones before reading blocks (2)").build());
 		opts.addOption(Option.builder().longOpt("halt").desc("Halt on insertion failures (false)").build());
 		
 		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {			
@@ -45,6 +81,7 @@ public class Main {
 				Exporter.instance().close();
 				Curator.instance().close();
 				Importer.instance().close();
+				Metrics.instance().close();
 			}
 		}));;
 	}
@@ -52,6 +89,35 @@ public class Main {
 	public Main() {
 	}
 	
+	private static Map<String, Set<String>> parseFieldPatterns(String value) {
+		
+		Map<String, Set<String>> patterns = new HashMap<String, Set<String>>();
+		
+		if(null == value) return patterns;
+		
+		for(String entry : value.split(";")) {
+			
+			if(entry.trim().isEmpty()) continue;
+			
+			int split = entry.indexOf('=');
+			String pattern = split > 0 ? entry.substring(0, split).trim() : "*";
+			String fields = entry.substring(split + 1);
+			
+			Set<String> set = patterns.get(pattern);
+			
+			if(null == set) {
+				set = new HashSet<String>();
+				patterns.put(pattern, set);
+			}
+			
+			for(String field : fields.split(",")) {
+				if(!field.trim().isEmpty()) set.add(field.trim());
+			}
+		}
+		
+		return patterns;
+	}
+	
 	public static void main(String[] args) throws Exception {
 		
 		
@@ -76,8 +142,33 @@ public class Main {
 		final String domainKeys = config.getOptionValue("d");
 		final String query = config.getOptionValue("q");
 		final int fetchSize = Integer.valueOf(config.getOptionValue("s", "5000"));
-		final int bulkSize = Integer.valueOf(config.getOptionValue("s", "100"));
+		final int bulkSize = Integer.valueOf(config.getOptionValue("s", "10000"));
 		final long keepAlive = Long.valueOf(config.getOptionValue("a", "60000"));
+		final int workers = Integer.valueOf(config.getOptionValue("w", "1"));
+		final int domainWorkers = Integer.valueOf(config.getOptionValue("k", "1"));
+		final int queueDepth = Integer.valueOf(config.getOptionValue("queue", "2"));
+		final int maxScrolls = Integer.valueOf(config.getOptionValue("scrolls", "100"));
+		final boolean shardTargeted = config.hasOption("shards");
+		final String preference = config.getOptionValue("preference");
+		final boolean http = config.hasOption("http");
+		final boolean sniff = config.hasOption("sniff");
+		final boolean resume = config.hasOption("resume");
+		final String sortField = config.getOptionValue("sort");
+		final String sinceField = config.getOptionValue("since");
+		final String compression = config.getOptionValue("compress", "gzip");
+		final int partitions = Integer.valueOf(config.getOptionValue("partitions", "1"));
+		final long segmentSize = Long.valueOf(config.getOptionValue("segment", "256")) * 1024 * 1024;
+		final String includes = config.getOptionValue("includes");
+		final String excludes = config.getOptionValue("excludes");
+		final long pageBudget = Long.valueOf(config.getOptionValue("budget", "0")) * 1024 * 1024;
+		final int minFetchSize = Integer.valueOf(config.getOptionValue("minsize", "100"));
+		final int maxFetchSize = Integer.valueOf(config.getOptionValue("maxsize", "10000"));
+		final int slices = config.hasOption("slices") ? Integer.valueOf(config.getOptionValue("slices", "0")) : 1;
+		final long rate = Long.valueOf(config.getOptionValue("rate", "0"));
+		final long bandwidth = Long.valueOf(config.getOptionValue("bandwidth", "0")) * 1024 * 1024;
+		final String limitsFile = config.getOptionValue("limits");
+		final String metricsFile = config.getOptionValue("metrics");
+		final long metricsInterval = Long.valueOf(config.getOptionValue("interval", "10"));
 		final boolean verbose = config.hasOption("v");
 		final String outFolder = config.getOptionValue("o", "data");
 		final String target =  config.getOptionValue("t", "export");
@@ -85,6 +176,14 @@ public class Main {
 		final String records = config.getOptionValue("r");
 		final String messages = config.getOptionValue("m");
 		final boolean halt = config.hasOption("halt") ? config.hasOption("halt") : false;
+		final long bulkBytes = Long.valueOf(config.getOptionValue("bulkmb", "10")) * 1024 * 1024;
+		final long bulkFlush = Long.valueOf(config.getOptionValue("bulkflush", "5")) * 1000;
+		final int bulkWorkers = Integer.valueOf(config.getOptionValue("bulks", "1"));
+		final int bulkQueue = Integer.valueOf(config.getOptionValue("bulkqueue", "2"));
+		final String destHost = config.getOptionValue("dhost");
+		final int destPort = Integer.valueOf(config.getOptionValue("dport", http ? "9200" : "9300"));
+		final String destCluster = config.getOptionValue("dcluster", clusterName);
+		final String destNode = config.getOptionValue("dnode", nodeName);
 		
 		JSONObject json = new JSONObject();
 		json.put("nodeName", nodeName);
@@ -98,6 +197,31 @@ public class Main {
 		json.put("fetchSize", fetchSize);
 		json.put("bulkSize", bulkSize);
 		json.put("keepAlive", keepAlive);
+		json.put("workers", workers);
+		json.put("domainWorkers", domainWorkers);
+		json.put("slices", slices);
+		json.put("queueDepth", queueDepth);
+		json.put("maxScrolls", maxScrolls);
+		json.put("shardTargeted", shardTargeted);
+		json.put("preference", preference);
+		json.put("http", http);
+		json.put("sniff", sniff);
+		json.put("resume", resume);
+		json.put("sortField", sortField);
+		json.put("sinceField", sinceField);
+		json.put("compression", compression);
+		json.put("partitions", partitions);
+		json.put("pageBudget", pageBudget);
+		json.put("minFetchSize", minFetchSize);
+		json.put("maxFetchSize", maxFetchSize);
+		json.put("includes", includes);
+		json.put("excludes", excludes);
+		json.put("segmentSize", segmentSize);
+		json.put("rate", rate);
+		json.put("bandwidth", bandwidth);
+		json.put("limitsFile", limitsFile);
+		json.put("metricsFile", metricsFile);
+		json.put("metricsInterval", metricsInterval);
 		json.put("verbose", verbose);
 		json.put("outFolder", outFolder);
 		json.put("target", target);
@@ -105,15 +229,35 @@ public class Main {
 		json.put("records", records);
 		json.put("messages", messages);
 		json.put("halt", halt);
+		json.put("bulkBytes", bulkBytes);
+		json.put("bulkFlush", bulkFlush);
+		json.put("bulkWorkers", bulkWorkers);
+		json.put("bulkQueue", bulkQueue);
+		json.put("destHost", destHost);
+		json.put("destPort", destPort);
+		json.put("destCluster", destCluster);
+		json.put("destNode", destNode);
 		
 		System.out.format("Settings: %s\n", json.toString(4));
 		
 		switch(format) {
 		case "file":
 		case "db":
+		case "ndjson":
+		case "pack":
+		case "mvstore":
 			break;
 		default:
-			System.err.format("Unknown format:%s, supported <file | db>\n", format);
+			System.err.format("Unknown format:%s, supported <file | db | ndjson | pack | mvstore>\n", format);
+			return;
+		}
+		
+		switch(compression) {
+		case "gzip":
+		case "none":
+			break;
+		default:
+			System.err.format("Unknown compression:%s, supported <gzip | none>\n", compression);
 			return;
 		}
 		
@@ -122,7 +266,24 @@ public class Main {
 			return;
 		}
 		
+		Metrics.instance().start(metricsFile, metricsInterval);
+		
+		for(String name : new String[] {"export", "import"}) {
+			RateLimiter.get(name).setDocsPerSecond(rate);
+			RateLimiter.get(name).setBytesPerSecond(bandwidth);
+		}
+		
+		if(null != limitsFile) {
+			RateLimiter.watch(new File(limitsFile), 5000);
+		}
+		
+		if(http) {
+			int scrolling = maxScrolls > 0 ? maxScrolls : workers * domainWorkers * Math.max(1, slices);
+			HttpBackend.setMaxConnections(Math.max(scrolling, bulkWorkers));
+		}
+		
 		switch(target) {
+		case "copy":
 		case "export":
 			
 			if(!config.hasOption("i") && !config.hasOption("r") && !config.hasOption("m")) {
@@ -138,10 +299,39 @@ public class Main {
 				return;
 			}
 			
+			if(resume && null == sortField) {
+				System.err.println("Sort fields (--sort) are required to resume, ending with a unique doc valued field");
+				return;
+			}
+			
+			if("copy".equals(target) && null == destHost) {
+				System.err.println("Destination host (--dhost) is required to copy");
+				return;
+			}
+			
 			Exporter exp = Exporter.instance();
 			
 			try {
 				
+				if("copy".equals(target)) {
+					Importer destination = Importer.instance();
+					destination.setBulkSize(fetchSize);
+					destination.setClusterName(destCluster);
+					destination.setNodeName(destNode);
+					destination.setHost(destHost);
+					destination.setPort(destPort);
+					destination.setHttp(http);
+					destination.setFormat("copy");
+					destination.setDebug(verbose);
+					destination.setHaltOnInsertFailure(halt);
+					destination.setBulkBytes(bulkBytes);
+					destination.setBulkFlush(bulkFlush);
+					destination.setBulkWorkers(bulkWorkers);
+					destination.setBulkQueue(bulkQueue);
+					destination.setup();
+					exp.setDestination(destination);
+				}
+				
 				exp.setNodeName(nodeName);
 				exp.setClusterName(clusterName);
 				exp.setHost(hostName);
@@ -149,10 +339,30 @@ public class Main {
 				exp.setSearchPort(searchPort);
 				exp.setQueryString(query);
 				exp.setFetchSize(fetchSize);
+				exp.setPageBudget(pageBudget);
+				exp.setMinFetchSize(minFetchSize);
+				exp.setMaxFetchSize(maxFetchSize);
 				exp.setKeepAlive(keepAlive);
+				exp.setWorkers(workers);
+				exp.setDomainWorkers(domainWorkers);
+				exp.setSlices(slices);
+				exp.setQueueDepth(queueDepth);
+				exp.setMaxScrolls(maxScrolls);
+				exp.setShardTargeted(shardTargeted);
+				exp.setPreference(preference);
+				exp.setHttp(http);
+				exp.setSniff(sniff);
+				exp.setResume(resume);
+				exp.setSortField(sortField);
+				exp.setSinceField(sinceField);
 				exp.setDebug(verbose);
 				exp.setOutFolder(outFolder);
-				exp.setExportToDB(format.equals("db"));
+				exp.setFormat("copy".equals(target) ? "copy" : format);
+				exp.setCompression(compression);
+				exp.setPartitions(partitions);
+				exp.setSegmentSize(segmentSize);
+				exp.setSourceIncludes(parseFieldPatterns(includes));
+				exp.setSourceExcludes(parseFieldPatterns(excludes));
 				
 				if(null != domainKeys) {
 					String[] rvals = domainKeys.split(",");
@@ -194,6 +404,7 @@ public class Main {
 				exp.start();
 			}finally {
 				exp.close();
+				Importer.instance().close();
 			}
 			break;
 		case "import":
@@ -201,12 +412,17 @@ public class Main {
 			importer.setBulkSize(bulkSize);
 			importer.setClusterName(clusterName);
 			importer.setHost(hostName);
-			importer.setPort(port);
-			importer.setImportFromDB(format.equals("db"));
+			importer.setPort(http ? searchPort : port);
+			importer.setHttp(http);
+			importer.setFormat(format);
 			importer.setNodeName(nodeName);
 			importer.setOutFolder(outFolder);
 			importer.setDebug(verbose);
 			importer.setHaltOnInsertFailure(halt);
+			importer.setBulkBytes(bulkBytes);
+			importer.setBulkFlush(bulkFlush);
+			importer.setBulkWorkers(bulkWorkers);
+			importer.setBulkQueue(bulkQueue);
 			
 			if(null != domainKeys) {
 				String[] rvals = domainKeys.split(",");
@@ -225,7 +441,7 @@ public class Main {
 			curator.curate();
 			break;
 		default:
-			System.err.format("Unknown target:%s, supported <export | import | curate>\n", target);
+			System.err.format("Unknown target:%s, supported <export | copy | import | curate>\n", target);
 			break;
 		}
 		
@@ -0,0 +1,48 @@
+package io.boodskap.iot.tools.export;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+public class Meter implements MeterMBean {
+
+	private final LongAdder count = new LongAdder();
+	private long lastCount = 0;
+	private long lastTick = System.nanoTime();
+	private volatile double rate = 0;
+
+	public void mark(long n) {
+		count.add(n);
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getRate() {
+		return rate;
+	}
+
+	public synchronized void tick() {
+
+		long now = System.nanoTime();
+		long current = count.sum();
+
+		if(now > lastTick) {
+			rate = (current - lastCount) * 1e9 / (now - lastTick);
+		}
+
+		lastCount = current;
+		lastTick = now;
+	}
+
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		json.put("count", getCount());
+		json.put("rate", getRate());
+		return json;
+	}
+
+}
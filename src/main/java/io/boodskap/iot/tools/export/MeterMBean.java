@@ -0,0 +1,9 @@
+package io.boodskap.iot.tools.export;
+
+public interface MeterMBean {
+
+	public long getCount();
+
+	public double getRate();
+
+}
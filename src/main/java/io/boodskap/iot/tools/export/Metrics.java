@@ -0,0 +1,157 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.json.JSONObject;
+
+public class Metrics {
+	
+	private static final Metrics instance = new Metrics();
+	
+	private static final String DOMAIN = "io.boodskap.iot.tools.export";
+	
+	private static final long TICK_SECONDS = 5;
+	
+	private final Map<String, Meter> meters = new ConcurrentHashMap<String, Meter>();
+	private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final Map<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+	
+	private ScheduledExecutorService ticker;
+	private PrintWriter dump;
+	private long dumpInterval = 10;
+	private long lastDump = 0;
+	
+	private Metrics() {
+	}
+	
+	public static final Metrics instance() {
+		return instance;
+	}
+	
+	public synchronized void start(String dumpFile, long dumpInterval) throws IOException {
+		
+		if(null != ticker) return;
+		
+		if(null != dumpFile) {
+			this.dump = new PrintWriter(new FileWriter(new File(dumpFile), true));
+			this.dumpInterval = dumpInterval;
+		}
+		
+		ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "metrics");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		ticker.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		}, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+	}
+	
+	public Meter meter(String name) {
+		return meters.computeIfAbsent(name, n -> register(n, "Meter", new Meter()));
+	}
+	
+	public LatencyHistogram histogram(String name) {
+		return histograms.computeIfAbsent(name, n -> register(n, "Histogram", new LatencyHistogram()));
+	}
+	
+	public Gauge gauge(String name) {
+		return gauges.computeIfAbsent(name, n -> register(n, "Gauge", new Gauge()));
+	}
+	
+	public JSONObject toJSON() {
+		
+		JSONObject json = new JSONObject();
+		
+		for(Map.Entry<String, Meter> me : new TreeMap<String, Meter>(meters).entrySet()) {
+			json.put(me.getKey(), me.getValue().toJSON());
+		}
+		
+		for(Map.Entry<String, LatencyHistogram> me : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+			json.put(me.getKey(), me.getValue().toJSON());
+		}
+		
+		for(Map.Entry<String, Gauge> me : new TreeMap<String, Gauge>(gauges).entrySet()) {
+			json.put(me.getKey(), me.getValue().getValue());
+		}
+		
+		return json;
+	}
+	
+	protected synchronized void tick() {
+		
+		for(Meter meter : meters.values()) {
+			meter.tick();
+		}
+		
+		long now = System.currentTimeMillis();
+		
+		if(null != dump && (now - lastDump) >= (dumpInterval * 1000)) {
+			dump(now);
+		}
+	}
+	
+	protected void dump(long now) {
+		
+		JSONObject line = new JSONObject();
+		line.put("time", now);
+		line.put("metrics", toJSON());
+		
+		dump.println(line.toString());
+		dump.flush();
+		
+		lastDump = now;
+	}
+	
+	protected <T> T register(String name, String type, T metric) {
+		
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(metric, new ObjectName(String.format("%s:type=%s,name=%s", DOMAIN, type, ObjectName.quote(name))));
+		}catch(Exception ex) {
+			System.err.format("Unable to register metric %s, %s\n", name, ex.getMessage());
+		}
+		
+		return metric;
+	}
+	
+	public synchronized void close() {
+		
+		try{if(null != ticker) ticker.shutdownNow();}catch(Exception ex) {ex.printStackTrace();}
+		
+		if(null != dump) {
+			
+			for(Meter meter : meters.values()) {
+				meter.tick();
+			}
+			
+			dump(System.currentTimeMillis());
+			dump.close();
+			dump = null;
+		}
+		
+		ticker = null;
+	}
+
+}
@@ -0,0 +1,74 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.search.SearchHit;
+
+@SuppressWarnings("deprecation")
+public class PackExportSink extends FileExportSink {
+	
+	private static final long MAX_PACK_SIZE = 1024L * 1024 * 1024;
+
+	private final String prefix;
+	private final long packSize;
+	
+	private final Map<String, PackWriter> writers = new HashMap<String, PackWriter>();
+	private int pack = 0;
+
+	public PackExportSink(File indexFolder, String prefix, long packSize) {
+		super(indexFolder);
+		this.prefix = prefix;
+		this.packSize = Math.min(packSize, MAX_PACK_SIZE);
+	}
+
+	@Override
+	public void write(SearchHit hit) throws IOException, SQLException {
+		
+		PackWriter writer = writers.get(hit.getType());
+		
+		if(null != writer && writer.size() >= packSize) {
+			writer.close();
+			writer = null;
+		}
+		
+		if(null == writer) {
+			writer = new PackWriter(ensureType(hit.getType()), String.format("%s-%06d", prefix, ++pack));
+			writers.put(hit.getType(), writer);
+		}
+		
+		writer.append(hit.getId(), hit.getSourceRef());
+	}
+
+	@Override
+	public void flush(Checkpoint checkpoint) throws IOException, SQLException {
+		
+		for(PackWriter writer : writers.values()) {
+			writer.flush();
+		}
+		
+		super.flush(checkpoint);
+	}
+
+	@Override
+	public void close() throws IOException, SQLException {
+		
+		IOException failure = null;
+		
+		for(PackWriter writer : writers.values()) {
+			try {
+				writer.close();
+			}catch(IOException ex) {
+				if(null == failure) failure = ex;
+			}
+		}
+		
+		writers.clear();
+		
+		if(null != failure) throw failure;
+	}
+
+}
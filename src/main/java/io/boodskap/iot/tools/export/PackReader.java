@@ -0,0 +1,122 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.elasticsearch.common.collect.Tuple;
+
+public class PackReader {
+	
+	private final File packFile;
+	private final MappedByteBuffer pack;
+	private final MappedByteBuffer index;
+	private final int slots;
+	private int position = 0;
+	
+	public PackReader(File packFile) throws IOException {
+		
+		this.packFile = packFile;
+		this.pack = map(packFile);
+		
+		String name = packFile.getName();
+		File indexFile = new File(packFile.getParentFile(), String.format("%s%s", name.substring(0, name.length() - PackWriter.PACK_EXTENSION.length()), PackWriter.INDEX_EXTENSION));
+		
+		if(indexFile.exists()) {
+			
+			this.index = map(indexFile);
+			
+			if(index.getInt(0) != PackWriter.INDEX_MAGIC) {
+				throw new IOException(String.format("Invalid pack index %s", indexFile.getAbsolutePath()));
+			}
+			
+			this.slots = index.getInt(4);
+			
+		}else {
+			this.index = null;
+			this.slots = 0;
+		}
+	}
+	
+	public byte[] get(String id) throws IOException {
+		
+		if(null == index) {
+			throw new IOException(String.format("Pack %s has no index", packFile.getAbsolutePath()));
+		}
+		
+		byte[] key = id.getBytes(StandardCharsets.UTF_8);
+		long hash = PackWriter.hash(key);
+		int slot = (int) (hash & (slots - 1));
+		
+		while(true) {
+			
+			int base = PackWriter.INDEX_HEADER_SIZE + (slot * PackWriter.INDEX_SLOT_SIZE);
+			long offset = index.getLong(base + 8);
+			
+			if(offset == -1) return null;
+			
+			if(index.getLong(base) == hash) {
+				
+				int record = (int) offset;
+				int klen = pack.getInt(record);
+				
+				if(klen == key.length && Arrays.equals(key, read(record + 4, klen))) {
+					return read(record + 8 + klen, pack.getInt(record + 4 + klen));
+				}
+			}
+			
+			slot = (slot + 1) & (slots - 1);
+		}
+	}
+	
+	public int size() {
+		return null != index ? index.getInt(8) : -1;
+	}
+	
+	public Tuple<String, byte[]> next() {
+		
+		if(position + 4 > pack.limit()) return null;
+		
+		int klen = pack.getInt(position);
+		
+		if(position + 8 + klen > pack.limit()) return null;
+		
+		int dlen = pack.getInt(position + 4 + klen);
+		
+		if(position + 8 + klen + dlen > pack.limit()) {
+			System.err.format("Pack %s is truncated, stopping at the last complete record\n", packFile.getName());
+			return null;
+		}
+		
+		String id = new String(read(position + 4, klen), StandardCharsets.UTF_8);
+		byte[] data = read(position + 8 + klen, dlen);
+		
+		position += 8 + klen + dlen;
+		
+		return new Tuple<>(id, data);
+	}
+	
+	private byte[] read(int offset, int length) {
+		
+		byte[] data = new byte[length];
+		ByteBuffer buffer = pack.duplicate();
+		
+		buffer.position(offset);
+		buffer.get(data);
+		
+		return data;
+	}
+	
+	private static MappedByteBuffer map(File file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			return channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+public class PackWriter {
+	
+	public static final String PACK_EXTENSION = ".pack";
+	
+	public static final String INDEX_EXTENSION = ".idx";
+	
+	public static final int INDEX_MAGIC = 0x42504b31;
+	
+	public static final int INDEX_HEADER_SIZE = 12;
+	
+	public static final int INDEX_SLOT_SIZE = 16;
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final File packFile;
+	private final File indexFile;
+	private final DataOutputStream out;
+	private long offset = 0;
+	private long[] hashes = new long[1024];
+	private long[] offsets = new long[1024];
+	private int count = 0;
+	
+	public PackWriter(File folder, String name) throws IOException {
+		this.packFile = new File(folder, String.format("%s%s", name, PACK_EXTENSION));
+		this.indexFile = new File(folder, String.format("%s%s", name, INDEX_EXTENSION));
+		this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(packFile.toPath()), BUFFER_SIZE));
+	}
+	
+	public void append(String id, BytesReference source) throws IOException {
+		
+		byte[] key = id.getBytes(StandardCharsets.UTF_8);
+		
+		out.writeInt(key.length);
+		out.write(key);
+		out.writeInt(source.length());
+		source.writeTo(out);
+		
+		if(count == hashes.length) {
+			hashes = Arrays.copyOf(hashes, count * 2);
+			offsets = Arrays.copyOf(offsets, count * 2);
+		}
+		
+		hashes[count] = hash(key);
+		offsets[count] = offset;
+		++count;
+		
+		offset += 8 + key.length + source.length();
+	}
+	
+	public long size() {
+		return offset;
+	}
+	
+	public void flush() throws IOException {
+		out.flush();
+	}
+	
+	public void close() throws IOException {
+		out.close();
+		writeIndex();
+	}
+	
+	protected void writeIndex() throws IOException {
+		
+		int slots = Integer.highestOneBit(Math.max(16, count * 2) - 1) << 1;
+		long[] slotHashes = new long[slots];
+		long[] slotOffsets = new long[slots];
+		
+		Arrays.fill(slotOffsets, -1);
+		
+		for(int i=0;i<count;i++) {
+			
+			int slot = (int) (hashes[i] & (slots - 1));
+			
+			while(slotOffsets[slot] != -1) {
+				slot = (slot + 1) & (slots - 1);
+			}
+			
+			slotHashes[slot] = hashes[i];
+			slotOffsets[slot] = offsets[i];
+		}
+		
+		File temp = new File(indexFile.getParentFile(), String.format("%s.tmp", indexFile.getName()));
+		DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()), BUFFER_SIZE));
+		
+		try {
+			
+			idx.writeInt(INDEX_MAGIC);
+			idx.writeInt(slots);
+			idx.writeInt(count);
+			
+			for(int i=0;i<slots;i++) {
+				idx.writeLong(slotHashes[i]);
+				idx.writeLong(slotOffsets[i]);
+			}
+			
+		}finally {
+			idx.close();
+		}
+		
+		if(!temp.renameTo(indexFile)) {
+			throw new IOException(String.format("Unable to write pack index %s", indexFile.getAbsolutePath()));
+		}
+	}
+	
+	public static long hash(byte[] key) {
+		return MurmurHash3.hash128(key, 0, key.length, 0, new MurmurHash3.Hash128()).h1;
+	}
+	
+	public static boolean isPack(File file) {
+		return file.isFile() && file.getName().endsWith(PACK_EXTENSION);
+	}
+
+}
@@ -0,0 +1,58 @@
+package io.boodskap.iot.tools.export;
+
+import org.elasticsearch.search.SearchHit;
+
+public class PageSizer {
+	
+	private static final double WEIGHT = 0.3;
+	
+	private final long budget;
+	private final int min;
+	private final int max;
+	private final long latencyTarget;
+	
+	private double avgHitBytes = 0;
+	private double avgLatency = 0;
+	private int size;
+	
+	public PageSizer(int initial, long budget, int min, int max, long latencyTarget) {
+		this.budget = budget;
+		this.min = min;
+		this.max = max;
+		this.latencyTarget = latencyTarget;
+		this.size = budget > 0 ? clamp(initial) : initial;
+	}
+	
+	public synchronized int size() {
+		return size;
+	}
+	
+	public synchronized void record(SearchHit[] hits, long latency) {
+		
+		if(budget <= 0 || null == hits || hits.length <= 0) return;
+		
+		long bytes = 0;
+		
+		for(SearchHit hit : hits) {
+			bytes += null != hit.getSourceRef() ? hit.getSourceRef().length() : 0;
+		}
+		
+		double hitBytes = Math.max(1, (double) bytes / hits.length);
+		
+		avgHitBytes = (avgHitBytes <= 0) ? hitBytes : (WEIGHT * hitBytes) + ((1 - WEIGHT) * avgHitBytes);
+		avgLatency = (avgLatency <= 0) ? latency : (WEIGHT * latency) + ((1 - WEIGHT) * avgLatency);
+		
+		double target = budget / avgHitBytes;
+		
+		if(avgLatency > latencyTarget) {
+			target = Math.min(target, size * (latencyTarget / avgLatency));
+		}
+		
+		size = clamp((int) Math.min(Integer.MAX_VALUE, target));
+	}
+	
+	private int clamp(int value) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+}
@@ -0,0 +1,116 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.elasticsearch.search.SearchHit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class PartitionedExportSink implements ExportSink {
+	
+	public static final String MANIFEST_EXTENSION = ".partitions.json";
+	
+	private final List<ExportSink> sinks;
+
+	public PartitionedExportSink(List<ExportSink> sinks) {
+		this.sinks = sinks;
+	}
+	
+	public static int partition(String docId, int partitions) {
+		return (int) Math.floorMod(PackWriter.hash(docId.getBytes(StandardCharsets.UTF_8)), (long) partitions);
+	}
+	
+	public static String partitionName(String domainKey, int partition) {
+		return String.format("%s.p%02d", domainKey, partition);
+	}
+	
+	public static void writeManifest(File folder, String domainKey, int partitions) throws IOException {
+		
+		JSONArray files = new JSONArray();
+		
+		for(int i=0;i<partitions;i++) {
+			files.put(partitionName(domainKey, i));
+		}
+		
+		JSONObject manifest = new JSONObject();
+		manifest.put("domainKey", domainKey);
+		manifest.put("partitions", partitions);
+		manifest.put("hash", "murmur3(docid) mod partitions");
+		manifest.put("files", files);
+		
+		File file = new File(folder, String.format("%s%s", domainKey, MANIFEST_EXTENSION));
+		File temp = new File(folder, String.format("%s.tmp", file.getName()));
+		
+		Files.write(temp.toPath(), manifest.toString(4).getBytes(StandardCharsets.UTF_8));
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	public static List<String> readManifest(File file) throws IOException {
+		
+		JSONObject manifest = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		JSONArray files = manifest.getJSONArray("files");
+		List<String> partitions = new ArrayList<String>();
+		
+		for(int i=0;i<files.length();i++) {
+			partitions.add(new File(file.getParentFile(), files.getString(i)).getAbsolutePath());
+		}
+		
+		return partitions;
+	}
+
+	@Override
+	public void write(SearchHit hit) throws IOException, SQLException {
+		sinks.get(partition(hit.getId(), sinks.size())).write(hit);
+	}
+
+	@Override
+	public void flush(Checkpoint checkpoint) throws IOException, SQLException {
+		
+		for(int i=1;i<sinks.size();i++) {
+			sinks.get(i).flush(null);
+		}
+		
+		sinks.get(0).flush(checkpoint);
+	}
+
+	@Override
+	public Checkpoint loadCheckpoint(String index) throws IOException, SQLException {
+		return sinks.get(0).loadCheckpoint(index);
+	}
+
+	@Override
+	public Long loadWatermark(String index, String field) throws IOException, SQLException {
+		return sinks.get(0).loadWatermark(index, field);
+	}
+
+	@Override
+	public void saveWatermark(String index, String field, long watermark) throws IOException, SQLException {
+		sinks.get(0).saveWatermark(index, field, watermark);
+	}
+
+	@Override
+	public void close() throws IOException, SQLException {
+		
+		Exception failure = null;
+		
+		for(ExportSink sink : sinks) {
+			try {
+				sink.close();
+			}catch(IOException | SQLException ex) {
+				if(null == failure) failure = ex;
+				else ex.printStackTrace();
+			}
+		}
+		
+		if(failure instanceof IOException) throw (IOException) failure;
+		if(failure instanceof SQLException) throw (SQLException) failure;
+	}
+
+}
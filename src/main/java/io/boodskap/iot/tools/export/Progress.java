@@ -0,0 +1,220 @@
+package io.boodskap.iot.tools.export;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+public class Progress {
+
+	private static final double WEIGHT = 0.3;
+	private static final int SHOWN = 3;
+
+	private final String action;
+	private final Counter global = new Counter();
+	private final Map<String, Counter> domains = new ConcurrentHashMap<String, Counter>();
+	private final Map<String, Counter> indexes = new ConcurrentHashMap<String, Counter>();
+
+	private ScheduledExecutorService reporter;
+	private long interval = 5000;
+	private boolean verbose = false;
+	private long started;
+	private long lastDone;
+	private long lastReport;
+	private double rate = -1;
+
+	public Progress(String action) {
+		this.action = action;
+	}
+
+	public synchronized void start() {
+
+		if(null != reporter) return;
+
+		started = lastReport = System.currentTimeMillis();
+
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "progress");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		reporter.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try{report();}catch(Exception ex) {ex.printStackTrace();}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+
+		if(null == reporter) return;
+
+		reporter.shutdownNow();
+		reporter = null;
+
+		report();
+	}
+
+	public void expect(String domain, String index, long count) {
+
+		if(count <= 0) return;
+
+		global.expected.addAndGet(count);
+
+		if(null != domain) domain(domain).expected.addAndGet(count);
+		if(null != index) index(domain, index).expected.addAndGet(count);
+	}
+
+	public void advance(String domain, String index, long count) {
+
+		global.done.addAndGet(count);
+
+		if(null != domain) domain(domain).done.addAndGet(count);
+		if(null != index) index(domain, index).done.addAndGet(count);
+	}
+
+	public void finish(String domain, String index) {
+
+		if(null != index) {
+			indexes.remove(key(domain, index));
+		}else if(null != domain) {
+			domains.remove(domain);
+			indexes.keySet().removeIf(k -> k.startsWith(String.format("%s/", domain)));
+		}
+	}
+
+	protected synchronized void report() {
+
+		long now = System.currentTimeMillis();
+		long done = global.done.get();
+		long expected = Math.max(done, global.expected.get());
+
+		if(now > lastReport) {
+			double current = (done - lastDone) * 1000.0 / (now - lastReport);
+			rate = rate < 0 ? current : (WEIGHT * current) + ((1 - WEIGHT) * rate);
+		}
+
+		lastDone = done;
+		lastReport = now;
+
+		long eta = rate > 0 ? (long) ((expected - done) / rate) : -1;
+
+		if(verbose) {
+
+			JSONObject json = new JSONObject();
+			json.put("action", action);
+			json.put("time", now);
+			json.put("elapsed", (now - started) / 1000);
+			json.put("done", done);
+			json.put("expected", expected);
+			json.put("rate", Math.round(Math.max(0, rate)));
+			json.put("eta", eta);
+			json.put("domains", toJSON(domains));
+			json.put("indexes", toJSON(indexes));
+
+			System.out.format("PROGRESS %s\n", json.toString());
+
+			return;
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		List<Map.Entry<String, Counter>> active = new ArrayList<Map.Entry<String, Counter>>(indexes.entrySet());
+
+		for(int i=0;i<Math.min(SHOWN, active.size());i++) {
+			Map.Entry<String, Counter> me = active.get(i);
+			sb.append(i == 0 ? " [" : ", ");
+			sb.append(me.getKey().substring(me.getKey().indexOf('/') + 1)).append(' ').append(me.getValue().percent()).append('%');
+		}
+
+		if(active.size() > SHOWN) {
+			sb.append(String.format(", +%d", active.size() - SHOWN));
+		}
+
+		if(!active.isEmpty()) {
+			sb.append(']');
+		}
+
+		System.out.format("%s %d/%d (%d%%), %d docs/s, ETA %s, domains:%d%s\n", action, done, expected, global.percent(), Math.round(Math.max(0, rate)), formatDuration(eta), domains.size(), sb);
+	}
+
+	private JSONObject toJSON(Map<String, Counter> counters) {
+
+		JSONObject json = new JSONObject();
+
+		for(Map.Entry<String, Counter> me : counters.entrySet()) {
+			JSONObject counter = new JSONObject();
+			counter.put("done", me.getValue().done.get());
+			counter.put("expected", me.getValue().expected.get());
+			json.put(me.getKey(), counter);
+		}
+
+		return json;
+	}
+
+	private static String formatDuration(long seconds) {
+
+		if(seconds < 0) return "--:--:--";
+
+		return String.format("%02d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+	}
+
+	private Counter domain(String domain) {
+		Counter counter = domains.get(domain);
+		return null != counter ? counter : domains.computeIfAbsent(domain, d -> new Counter());
+	}
+
+	private Counter index(String domain, String index) {
+		String key = key(domain, index);
+		Counter counter = indexes.get(key);
+		return null != counter ? counter : indexes.computeIfAbsent(key, k -> new Counter());
+	}
+
+	private static String key(String domain, String index) {
+		return null != domain ? String.format("%s/%s", domain, index) : index;
+	}
+
+	public long getDone() {
+		return global.done.get();
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	private static class Counter {
+
+		private final AtomicLong expected = new AtomicLong();
+		private final AtomicLong done = new AtomicLong();
+
+		private long percent() {
+			long total = Math.max(done.get(), expected.get());
+			return total > 0 ? (done.get() * 100) / total : 0;
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RateLimiter implements RateLimiterMBean {
+	
+	private static final Map<String, RateLimiter> limiters = new ConcurrentHashMap<String, RateLimiter>();
+	
+	private static ScheduledExecutorService watcher;
+	
+	private final String name;
+	private final Bucket docs = new Bucket();
+	private final Bucket bytes = new Bucket();
+	private final AtomicLong throttled = new AtomicLong();
+	private final LatencyHistogram waits;
+	
+	private RateLimiter(String name) {
+		this.name = name;
+		this.waits = Metrics.instance().histogram(String.format("%s.throttle", name));
+	}
+	
+	public static RateLimiter get(String name) {
+		return limiters.computeIfAbsent(name, n -> Metrics.instance().register(n, "RateLimiter", new RateLimiter(n)));
+	}
+	
+	public void acquire(long docs, long bytes) throws InterruptedException {
+		
+		long wait = Math.max(this.docs.take(docs), this.bytes.take(bytes));
+		
+		if(wait <= 0) return;
+		
+		waits.record(wait);
+		throttled.addAndGet(TimeUnit.NANOSECONDS.toMillis(wait));
+		
+		TimeUnit.NANOSECONDS.sleep(wait);
+	}
+	
+	public static synchronized void watch(final File file, long interval) {
+		
+		if(null != watcher) return;
+		
+		watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "limits");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		watcher.scheduleWithFixedDelay(new Runnable() {
+			
+			private long modified = 0;
+			
+			@Override
+			public void run() {
+				
+				if(!file.exists() || file.lastModified() == modified) return;
+				
+				modified = file.lastModified();
+				
+				Properties props = new Properties();
+				
+				try(InputStream in = new FileInputStream(file)){
+					props.load(in);
+				}catch(Exception ex) {
+					System.err.format("Unable to read limits from %s, %s\n", file.getAbsolutePath(), ex.getMessage());
+					return;
+				}
+				
+				for(RateLimiter limiter : limiters.values()) {
+					limiter.apply(props);
+				}
+			}
+		}, 0, interval, TimeUnit.MILLISECONDS);
+	}
+	
+	protected void apply(Properties props) {
+		
+		String rate = props.getProperty(String.format("%s.rate", name), props.getProperty("rate"));
+		String bandwidth = props.getProperty(String.format("%s.bandwidth", name), props.getProperty("bandwidth"));
+		
+		try {
+			
+			if(null != rate) {
+				setDocsPerSecond(Long.valueOf(rate.trim()));
+			}
+			
+			if(null != bandwidth) {
+				setBytesPerSecond(Long.valueOf(bandwidth.trim()) * 1024 * 1024);
+			}
+			
+		}catch(NumberFormatException ex) {
+			System.err.format("Invalid %s limits, %s\n", name, ex.getMessage());
+			return;
+		}
+		
+		System.out.format("Limits %s, docs/s:%d, bytes/s:%d\n", name, getDocsPerSecond(), getBytesPerSecond());
+	}
+	
+	@Override
+	public long getDocsPerSecond() {
+		return docs.rate;
+	}
+	
+	@Override
+	public void setDocsPerSecond(long docsPerSecond) {
+		docs.rate = Math.max(0, docsPerSecond);
+	}
+	
+	@Override
+	public long getBytesPerSecond() {
+		return bytes.rate;
+	}
+	
+	@Override
+	public void setBytesPerSecond(long bytesPerSecond) {
+		bytes.rate = Math.max(0, bytesPerSecond);
+	}
+	
+	@Override
+	public long getThrottledMillis() {
+		return throttled.get();
+	}
+	
+	private static class Bucket {
+		
+		private volatile long rate = 0;
+		private double tokens = 0;
+		private long refilled = System.nanoTime();
+		
+		private synchronized long take(long count) {
+			
+			long now = System.nanoTime();
+			long rate = this.rate;
+			
+			if(rate <= 0) {
+				tokens = 0;
+				refilled = now;
+				return 0;
+			}
+			
+			tokens = Math.min(rate, tokens + ((now - refilled) * rate / 1e9));
+			refilled = now;
+			tokens -= count;
+			
+			return tokens < 0 ? (long) (-tokens * 1e9 / rate) : 0;
+		}
+	}
+
+}
@@ -0,0 +1,15 @@
+package io.boodskap.iot.tools.export;
+
+public interface RateLimiterMBean {
+
+	public long getDocsPerSecond();
+
+	public void setDocsPerSecond(long docsPerSecond);
+
+	public long getBytesPerSecond();
+
+	public void setBytesPerSecond(long bytesPerSecond);
+
+	public long getThrottledMillis();
+
+}
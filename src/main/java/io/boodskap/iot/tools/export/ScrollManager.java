@@ -0,0 +1,138 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class ScrollManager {
+
+	private final Backend backend;
+	private final TimeValue keepAlive;
+	private final Semaphore permits;
+	private final Set<Scroll> open = ConcurrentHashMap.newKeySet();
+	private final Gauge gauge = Metrics.instance().gauge("export.scroll.open");
+
+	public ScrollManager(Backend backend, long keepAlive, int maxScrolls) {
+		this.backend = backend;
+		this.keepAlive = new TimeValue(keepAlive);
+		this.permits = maxScrolls > 0 ? new Semaphore(maxScrolls, true) : null;
+	}
+
+	public Scroll open(SearchRequest search) throws InterruptedException, IOException {
+
+		if(null != permits && !permits.tryAcquire()) {
+			while(!permits.tryAcquire(keepAlive.millis(), TimeUnit.MILLISECONDS)) {
+				System.out.format("\tWaiting for a scroll context, %d open\n", open.size());
+			}
+		}
+
+		Scroll scroll = new Scroll();
+
+		try {
+
+			search.scroll(keepAlive);
+			scroll.started = System.nanoTime();
+			scroll.response = backend.search(search);
+			scroll.scrollId = scroll.response.getScrollId();
+
+			open.add(scroll);
+			gauge.set(open.size());
+
+			return scroll;
+
+		}catch(IOException | RuntimeException ex) {
+			if(null != permits) permits.release();
+			throw ex;
+		}
+	}
+
+	public void clearAll() {
+
+		List<Scroll> scrolls = new ArrayList<Scroll>(open);
+
+		if(!scrolls.isEmpty()) {
+			System.out.format("Clearing %d open scroll contexts\n", scrolls.size());
+		}
+
+		for(Scroll scroll : scrolls) {
+			scroll.close();
+		}
+	}
+
+	public int getOpen() {
+		return open.size();
+	}
+
+	public class Scroll {
+
+		private SearchResponse response;
+		private String scrollId;
+		private long started;
+		private boolean closed = false;
+
+		private Scroll() {
+		}
+
+		public SearchResponse getResponse() {
+			return response;
+		}
+
+		public long getStarted() {
+			return started;
+		}
+
+		public synchronized SearchResponse next() {
+
+			if(closed || null == scrollId) return null;
+
+			try {
+				response = backend.scroll(scrollId, keepAlive);
+			}catch(IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+
+			if(null != response.getScrollId()) {
+				scrollId = response.getScrollId();
+			}
+
+			return response;
+		}
+
+		public void close() {
+
+			String scrollId;
+
+			synchronized (this) {
+
+				if(closed) return;
+
+				closed = true;
+				scrollId = this.scrollId;
+			}
+
+			try {
+
+				if(null != scrollId) {
+					backend.clearScroll(scrollId);
+				}
+
+			}catch(Exception ex) {
+				System.err.format("Unable to clear scroll, %s\n", ex.getMessage());
+			}finally {
+				open.remove(this);
+				gauge.set(open.size());
+				if(null != permits) permits.release();
+			}
+		}
+	}
+
+}
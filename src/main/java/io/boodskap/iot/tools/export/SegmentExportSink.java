@@ -0,0 +1,127 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.json.JSONObject;
+
+@SuppressWarnings("deprecation")
+public class SegmentExportSink extends FileExportSink {
+	
+	public static final String EXTENSION = ".ndjson";
+	
+	public static final String GZIP_EXTENSION = ".ndjson.gz";
+	
+	public static final String COUNT_EXTENSION = ".count";
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private static final byte[] RECORD_END = "}\n".getBytes(StandardCharsets.UTF_8);
+
+	private final String prefix;
+	private final long segmentSize;
+	private final boolean gzip;
+	
+	private OutputStream out;
+	private OutputStream sourceOut;
+	private File current;
+	private int segment = 0;
+	private long written = 0;
+	private long records = 0;
+
+	public SegmentExportSink(File indexFolder, String prefix, long segmentSize, String compression) {
+		super(indexFolder);
+		this.prefix = prefix;
+		this.segmentSize = segmentSize;
+		this.gzip = "gzip".equals(compression);
+	}
+
+	@Override
+	public void write(SearchHit hit) throws IOException, SQLException {
+		
+		if(null == out || written >= segmentSize) {
+			roll();
+		}
+		
+		byte[] header = String.format("{\"_index\":%s,\"_type\":%s,\"_id\":%s,\"_source\":", JSONObject.quote(hit.getIndex()), JSONObject.quote(hit.getType()), JSONObject.quote(hit.getId())).getBytes(StandardCharsets.UTF_8);
+		BytesReference source = hit.getSourceRef();
+		
+		out.write(header);
+		source.writeTo(sourceOut);
+		out.write(RECORD_END);
+		
+		written += header.length + source.length() + RECORD_END.length;
+		++records;
+	}
+
+	@Override
+	public void flush(Checkpoint checkpoint) throws IOException, SQLException {
+		
+		if(null != out) {
+			out.flush();
+		}
+		
+		super.flush(checkpoint);
+	}
+
+	@Override
+	public void close() throws IOException, SQLException {
+		closeSegment();
+	}
+	
+	protected void roll() throws IOException {
+		
+		closeSegment();
+		
+		current = new File(indexFolder, String.format("%s-%06d%s", prefix, ++segment, gzip ? GZIP_EXTENSION : EXTENSION));
+		OutputStream fout = Files.newOutputStream(current.toPath());
+		
+		out = new BufferedOutputStream(gzip ? new GZIPOutputStream(fout, BUFFER_SIZE, true) : fout, BUFFER_SIZE);
+		sourceOut = new SingleLineOutputStream(out);
+		written = 0;
+		records = 0;
+	}
+	
+	protected void closeSegment() throws IOException {
+		
+		if(null == out) return;
+		
+		try {
+			out.close();
+			Files.write(countFile(current).toPath(), String.valueOf(records).getBytes(StandardCharsets.UTF_8));
+		}finally {
+			out = null;
+			sourceOut = null;
+		}
+	}
+	
+	public static File countFile(File segment) {
+		return new File(segment.getParentFile(), segment.getName() + COUNT_EXTENSION);
+	}
+	
+	public static long count(File segment) {
+		
+		File file = countFile(segment);
+		
+		if(!file.isFile()) return -1;
+		
+		try {
+			return Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+		}catch(IOException | NumberFormatException ex) {
+			return -1;
+		}
+	}
+	
+	public static boolean isSegment(File file) {
+		return file.isFile() && (file.getName().endsWith(EXTENSION) || file.getName().endsWith(GZIP_EXTENSION));
+	}
+
+}
@@ -0,0 +1,126 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.json.JSONObject;
+
+@SuppressWarnings("deprecation")
+public class SegmentReader {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private static final byte[] SOURCE_FIELD = ",\"_source\":".getBytes(StandardCharsets.UTF_8);
+	
+	private final File file;
+	private final InputStream in;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	private byte[] line = new byte[BUFFER_SIZE];
+	private int length = 0;
+	
+	public SegmentReader(File file) throws IOException {
+		this.file = file;
+		InputStream fin = Files.newInputStream(file.toPath());
+		this.in = file.getName().endsWith(SegmentExportSink.GZIP_EXTENSION) ? new GZIPInputStream(fin, BUFFER_SIZE) : fin;
+	}
+	
+	public IndexRequest next() throws IOException {
+		
+		while(readLine()) {
+			
+			if(length <= 0) continue;
+			
+			int split = indexOf(SOURCE_FIELD);
+			
+			if(split < 0 || line[length - 1] != '}') {
+				throw new IOException(String.format("Invalid record in segment %s", file.getAbsolutePath()));
+			}
+			
+			JSONObject header = new JSONObject(String.format("%s}", new String(line, 0, split, StandardCharsets.UTF_8)));
+			byte[] source = Arrays.copyOfRange(line, split + SOURCE_FIELD.length, length - 1);
+			
+			IndexRequest req = new IndexRequest(header.getString("_index"), header.getString("_type"), header.getString("_id"));
+			req.source(source, XContentType.JSON);
+			
+			return req;
+		}
+		
+		return null;
+	}
+	
+	public void close() throws IOException {
+		in.close();
+	}
+	
+	private boolean readLine() throws IOException {
+		
+		length = 0;
+		
+		while(true) {
+			
+			if(position >= limit) {
+				
+				try {
+					limit = in.read(buffer);
+				}catch(EOFException ex) {
+					System.err.format("Segment %s is truncated, stopping at the last complete record\n", file.getName());
+					return false;
+				}
+				
+				position = 0;
+				
+				if(limit <= 0) {
+					limit = 0;
+					return false;
+				}
+			}
+			
+			int start = position;
+			
+			while(position < limit && buffer[position] != '\n') {
+				++position;
+			}
+			
+			append(start, position - start);
+			
+			if(position < limit) {
+				++position;
+				return true;
+			}
+		}
+	}
+	
+	private void append(int offset, int count) {
+		
+		if(length + count > line.length) {
+			line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+		}
+		
+		System.arraycopy(buffer, offset, line, length, count);
+		length += count;
+	}
+	
+	private int indexOf(byte[] pattern) {
+		
+		outer:
+		for(int i=0;i<=length - pattern.length;i++) {
+			for(int j=0;j<pattern.length;j++) {
+				if(line[i + j] != pattern[j]) continue outer;
+			}
+			return i;
+		}
+		
+		return -1;
+	}
+
+}
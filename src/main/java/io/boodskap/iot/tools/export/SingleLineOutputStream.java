@@ -0,0 +1,34 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class SingleLineOutputStream extends FilterOutputStream {
+
+	public SingleLineOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b == '\n' || b == '\r' ? ' ' : b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		
+		int start = off;
+		
+		for(int i=off;i<off+len;i++) {
+			if(b[i] == '\n' || b[i] == '\r') {
+				out.write(b, start, i - start);
+				out.write(' ');
+				start = i + 1;
+			}
+		}
+		
+		out.write(b, start, off + len - start);
+	}
+	
+}
@@ -0,0 +1,49 @@
+package io.boodskap.iot.tools.export;
+
+import java.io.IOException;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+
+public class TransportBackend implements Backend {
+
+	private final Client client;
+
+	public TransportBackend(Client client) {
+		this.client = client;
+	}
+
+	@Override
+	public SearchResponse search(SearchRequest search) throws IOException {
+		return client.search(search).actionGet();
+	}
+
+	@Override
+	public SearchResponse scroll(String scrollId, TimeValue keepAlive) throws IOException {
+		return client.searchScroll(new SearchScrollRequest(scrollId).scroll(keepAlive)).actionGet();
+	}
+
+	@Override
+	public void clearScroll(String scrollId) throws IOException {
+		ClearScrollRequest clear = new ClearScrollRequest();
+		clear.addScrollId(scrollId);
+		client.clearScroll(clear).actionGet();
+	}
+
+	@Override
+	public BulkResponse bulk(BulkRequest bulk) throws IOException {
+		return client.bulk(bulk).actionGet();
+	}
+
+	@Override
+	public void close() {
+		client.close();
+	}
+
+}
@@ -0,0 +1,114 @@
+package io.boodskap.iot.tools.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkEngineTest {
+
+	private BulkEngine engine;
+
+	@Before
+	public void start() {
+		engine = new BulkEngine(1, 2);
+	}
+
+	@After
+	public void stop() {
+		engine.close();
+	}
+
+	@Test
+	public void bulksQueuedBehindAFailureFailWithoutRunning() throws Exception {
+
+		final CountDownLatch release = new CountDownLatch(1);
+		final RuntimeException rejected = new RuntimeException("bulk rejected");
+		final AtomicInteger ran = new AtomicInteger();
+
+		Future<?> first = engine.submit(() -> {
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			throw rejected;
+		});
+
+		Future<?> second = engine.submit(() -> ran.incrementAndGet());
+		Future<?> third = engine.submit(() -> ran.incrementAndGet());
+
+		release.countDown();
+
+		assertSame(rejected, failure(first));
+		assertSame(rejected, failure(second));
+		assertSame(rejected, failure(third));
+		assertEquals(0, ran.get());
+	}
+
+	@Test
+	public void awaitAndSubmitThrowAfterAFailure() throws Exception {
+
+		Future<?> failed = engine.submit(() -> {throw new RuntimeException("bulk rejected");});
+
+		failure(failed);
+
+		try {
+			engine.await();
+			fail("Expected await to fail");
+		}catch(RuntimeException ex) {
+			assertTrue(ex.getMessage().contains("bulk rejected"));
+		}
+
+		try {
+			engine.submit(() -> {});
+			fail("Expected submit to fail");
+		}catch(RuntimeException ex) {
+			assertTrue(ex.getMessage().contains("bulk rejected"));
+		}
+	}
+
+	@Test
+	public void awaitWaitsForEveryBulk() throws Exception {
+
+		final AtomicInteger ran = new AtomicInteger();
+
+		for(int i=0;i<10;i++) {
+			engine.submit(() -> {
+				try {
+					Thread.sleep(5);
+				}catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				ran.incrementAndGet();
+			});
+		}
+
+		engine.await();
+
+		assertEquals(10, ran.get());
+		assertEquals(0, engine.getInflight());
+	}
+
+	private static Throwable failure(Future<?> f) {
+		try {
+			f.get(10, TimeUnit.SECONDS);
+		}catch(ExecutionException ex) {
+			return ex.getCause();
+		}catch(Exception ex) {
+			throw new AssertionError(ex);
+		}
+		throw new AssertionError("Expected the bulk to fail");
+	}
+
+}
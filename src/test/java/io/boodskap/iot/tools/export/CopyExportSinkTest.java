@@ -0,0 +1,156 @@
+package io.boodskap.iot.tools.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.search.SearchHit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class CopyExportSinkTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private Importer importer;
+	private final AtomicInteger bulks = new AtomicInteger();
+	private final AtomicInteger docs = new AtomicInteger();
+
+	@Before
+	public void start() throws Exception {
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+
+		server.createContext("/_bulk", (HttpExchange exchange) -> {
+
+			byte[] body = IOUtils.toByteArray(new GZIPInputStream(exchange.getRequestBody()));
+			boolean first = 1 == bulks.incrementAndGet();
+
+			if(!first) {
+				docs.addAndGet(IOUtils.readLines(new ByteArrayInputStream(body), StandardCharsets.UTF_8).size() / 2);
+			}
+
+			byte[] response = (first ? "{\"error\":\"rejected\",\"status\":500}" : "{\"took\":1,\"errors\":false,\"items\":[]}").getBytes(StandardCharsets.UTF_8);
+
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(first ? 500 : 200, response.length);
+			exchange.getResponseBody().write(response);
+			exchange.close();
+		});
+
+		server.start();
+
+		importer = Importer.instance();
+		importer.setHttp(true);
+		importer.setHost("localhost");
+		importer.setPort(server.getAddress().getPort());
+		importer.setFormat("copy");
+		importer.setBulkSize(2);
+		importer.setBulkWorkers(1);
+		importer.setBulkQueue(2);
+		importer.setHaltOnInsertFailure(false);
+		importer.setup();
+	}
+
+	@After
+	public void stop() {
+		importer.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void failedBulkStopsTheCheckpoint() throws Exception {
+
+		File index = folder.newFolder("rec_1_dk");
+		CopyExportSink sink = new CopyExportSink(index, importer, "dk");
+		Checkpoint checkpoint = new Checkpoint("rec_1_dk");
+
+		try {
+
+			try {
+
+				for(int i=0;i<6;i++) {
+					sink.write(hit("rec_1_dk", i));
+				}
+
+				checkpoint.advance(new Object[] {5}, 6);
+				sink.flush(checkpoint);
+
+				fail("Expected the failed bulk to surface");
+
+			}catch(Exception ex) {
+				assertFalse(new File(index, "checkpoint.json").exists());
+			}
+
+			for(int i=0;i<5;i++) {
+				try {
+					sink.flush(checkpoint);
+					fail("Expected the failed bulk to surface again");
+				}catch(IOException ex) {
+					assertFalse(new File(index, "checkpoint.json").exists());
+				}
+			}
+
+		}finally {
+			try{sink.close();}catch(Exception ex) {}
+		}
+
+		assertEquals(0, docs.get());
+	}
+
+	@Test
+	public void failedBulkStopsTheWatermark() throws Exception {
+
+		File index = folder.newFolder("rec_1_dk");
+		CopyExportSink sink = new CopyExportSink(index, importer, "dk");
+
+		try {
+
+			sink.write(hit("rec_1_dk", 0));
+			sink.write(hit("rec_1_dk", 1));
+			sink.saveWatermark("rec_1_dk", "stamp", 1000L);
+
+			fail("Expected the failed bulk to surface");
+
+		}catch(IOException ex) {
+			assertTrue(ex.getMessage().contains("status 500"));
+		}finally {
+			try{sink.close();}catch(Exception ex) {}
+		}
+
+		assertFalse(new File(index, "watermark.json").exists());
+	}
+
+	private static SearchHit hit(String index, int id) throws IOException {
+
+		String json = String.format("{\"_index\":\"%s\",\"_type\":\"_doc\",\"_id\":\"%d\",\"_source\":{\"stamp\":%d}}", index, id, id);
+
+		try(XContentParser parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json)){
+			parser.nextToken();
+			return SearchHit.fromXContent(parser);
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package io.boodskap.iot.tools.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings("deprecation")
+public class HttpBackendTest {
+
+	private static final String SEARCH_RESPONSE = "{\"_scroll_id\":\"scroll-1\",\"took\":1,\"timed_out\":false,"
+			+ "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+			+ "\"hits\":{\"total\":{\"value\":1,\"relation\":\"eq\"},\"max_score\":1.0,"
+			+ "\"hits\":[{\"_index\":\"rec_1_dk\",\"_type\":\"_doc\",\"_id\":\"1\",\"_score\":1.0,\"_source\":{\"name\":\"café\"}}]}}";
+
+	private static final String BULK_RESPONSE = "{\"took\":3,\"errors\":true,\"items\":["
+			+ "{\"index\":{\"_index\":\"rec_1_dk\",\"_type\":\"_doc\",\"_id\":\"1\",\"status\":201,\"_version\":1,\"result\":\"created\","
+			+ "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":0,\"_primary_term\":1}},"
+			+ "{\"index\":{\"_index\":\"rec_1_dk\",\"_type\":\"_doc\",\"_id\":\"2\",\"status\":429,"
+			+ "\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"queue full\"}}}]}";
+
+	private HttpServer server;
+	private HttpBackend backend;
+	private final List<String> requests = new CopyOnWriteArrayList<String>();
+	private final List<byte[]> bodies = new CopyOnWriteArrayList<byte[]>();
+	private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+	private volatile int status = 200;
+	private volatile String response = SEARCH_RESPONSE;
+	private volatile String location = null;
+
+	@Before
+	public void start() throws IOException {
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+
+		server.createContext("/", (HttpExchange exchange) -> {
+
+			byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+
+			if("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+				body = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(body)));
+			}
+
+			requests.add(String.format("%s %s", exchange.getRequestMethod(), exchange.getRequestURI()));
+			bodies.add(body);
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			try(GZIPOutputStream gzip = new GZIPOutputStream(out)){
+				gzip.write(response.getBytes(StandardCharsets.UTF_8));
+			}
+
+			if(null != location) {
+				exchange.getResponseHeaders().add("Location", location);
+			}
+
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			exchange.sendResponseHeaders(status, out.size());
+			exchange.getResponseBody().write(out.toByteArray());
+			exchange.close();
+		});
+
+		server.start();
+
+		backend = new HttpBackend("localhost", server.getAddress().getPort());
+	}
+
+	@After
+	public void stop() {
+		backend.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void searchSendsScrollAndPreferenceAndReadsGzipResponse() throws IOException {
+
+		SearchRequest search = new SearchRequest("rec_1_dk");
+		search.scroll(new TimeValue(60000));
+		search.preference("_shards:2|_local");
+		search.source(new SearchSourceBuilder().query(QueryBuilders.matchAllQuery()).size(10));
+
+		SearchResponse res = backend.search(search);
+
+		assertEquals("POST /rec_1_dk/_search?scroll=60000ms&preference=_shards%3A2%7C_local", requests.get(0));
+		assertTrue(new String(bodies.get(0), StandardCharsets.UTF_8).contains("\"size\":10"));
+		assertEquals("scroll-1", res.getScrollId());
+		assertEquals(1, res.getHits().getTotalHits().value);
+		assertEquals("{\"name\":\"café\"}", res.getHits().getHits()[0].getSourceAsString());
+	}
+
+	@Test
+	public void bulkSendsGzipNdjsonAndReadsItemFailures() throws IOException {
+
+		response = BULK_RESPONSE;
+
+		BulkRequest bulk = new BulkRequest();
+		bulk.add(new IndexRequest("rec_1_dk", "_doc", "1").source("{\n  \"a\" : 1\n}", XContentType.JSON));
+		bulk.add(new IndexRequest("rec_1_dk", "_doc", "2").source("{\"b\":\"x\"}", XContentType.JSON));
+
+		BulkResponse res = backend.bulk(bulk);
+
+		String[] lines = new String(bodies.get(0), StandardCharsets.UTF_8).split("\n");
+
+		assertEquals("POST /_bulk", requests.get(0));
+		assertEquals(4, lines.length);
+
+		JSONObject meta = new JSONObject(lines[0]).getJSONObject("index");
+
+		assertEquals("rec_1_dk", meta.getString("_index"));
+		assertEquals("_doc", meta.getString("_type"));
+		assertEquals("1", meta.getString("_id"));
+		assertEquals(1, new JSONObject(lines[1]).getInt("a"));
+		assertEquals("2", new JSONObject(lines[2]).getJSONObject("index").getString("_id"));
+		assertEquals("x", new JSONObject(lines[3]).getString("b"));
+		assertTrue(res.hasFailures());
+		assertFalse(res.getItems()[0].isFailed());
+		assertEquals(RestStatus.TOO_MANY_REQUESTS, res.getItems()[1].status());
+	}
+
+	@Test
+	public void connectionsAreKeptAlive() throws IOException {
+
+		for(int i=0;i<5;i++) {
+			backend.search(new SearchRequest("rec_1_dk"));
+			backend.scroll("scroll-1", new TimeValue(60000));
+		}
+
+		assertEquals(10, requests.size());
+		assertEquals(1, clientPorts.size());
+	}
+
+	@Test
+	public void errorStatusThrowsWithResponseBody() throws IOException {
+
+		status = 400;
+		response = "{\"error\":{\"type\":\"parsing_exception\"},\"status\":400}";
+
+		try {
+			backend.search(new SearchRequest("rec_1_dk"));
+			fail("Expected an IOException");
+		}catch(IOException ex) {
+			assertTrue(ex.getMessage().contains("status 400"));
+			assertTrue(ex.getMessage().contains("parsing_exception"));
+		}
+
+		status = 200;
+		response = SEARCH_RESPONSE;
+
+		backend.search(new SearchRequest("rec_1_dk"));
+
+		assertEquals(1, clientPorts.size());
+	}
+
+	@Test
+	public void missingIndexAndExpiredScrollThrow() {
+
+		status = 404;
+		response = "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}";
+
+		try {
+			backend.search(new SearchRequest("rec_2_dk"));
+			fail("Expected an IOException");
+		}catch(IOException ex) {
+			assertTrue(ex.getMessage().contains("index_not_found_exception"));
+		}
+
+		response = "{\"error\":{\"type\":\"search_context_missing_exception\"},\"status\":404}";
+
+		try {
+			backend.scroll("scroll-1", new TimeValue(60000));
+			fail("Expected an IOException");
+		}catch(IOException ex) {
+			assertTrue(ex.getMessage().contains("search_context_missing_exception"));
+		}
+	}
+
+	@Test
+	public void missingScrollIsIgnoredOnClear() throws IOException {
+
+		status = 404;
+		response = "{\"succeeded\":true,\"num_freed\":0}";
+
+		backend.clearScroll("scroll-1");
+
+		assertEquals("DELETE /_search/scroll", requests.get(0));
+		assertEquals("{\"scroll_id\":[\"scroll-1\"]}", new String(bodies.get(0), StandardCharsets.UTF_8));
+
+		status = 500;
+
+		try {
+			backend.clearScroll("scroll-1");
+			fail("Expected an IOException");
+		}catch(IOException ex) {
+			assertTrue(ex.getMessage().contains("status 500"));
+		}
+	}
+
+	@Test
+	public void redirectThrowsWithStatus() {
+
+		status = 307;
+		location = "http://localhost:1/_search";
+		response = "";
+
+		try {
+			backend.search(new SearchRequest("rec_1_dk"));
+			fail("Expected an IOException");
+		}catch(IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("status 307"));
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package io.boodskap.iot.tools.export;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ImporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private final List<String> imported = new ArrayList<String>();
+
+	@Before
+	public void start() throws Exception {
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+
+		server.createContext("/_bulk", (HttpExchange exchange) -> {
+
+			byte[] body = IOUtils.toByteArray(new GZIPInputStream(exchange.getRequestBody()));
+			List<String> lines = IOUtils.readLines(new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+
+			synchronized(imported) {
+				for(int i=0;i<lines.size();i+=2) {
+					JSONObject meta = new JSONObject(lines.get(i)).getJSONObject("index");
+					imported.add(String.format("%s/%s", meta.getString("_index"), meta.getString("_id")));
+				}
+			}
+
+			byte[] response = "{\"took\":1,\"errors\":false,\"items\":[]}".getBytes(StandardCharsets.UTF_8);
+
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, response.length);
+			exchange.getResponseBody().write(response);
+			exchange.close();
+		});
+
+		server.start();
+	}
+
+	@After
+	public void stop() {
+		server.stop(0);
+	}
+
+	@Test
+	public void domainDBIsReadInPrimaryKeyOrder() throws Exception {
+
+		File elastic = folder.newFolder("elastic");
+
+		try(Connection connection = DriverManager.getConnection(String.format("jdbc:h2:%s", new File(elastic, "dk").getAbsolutePath()), "sa", "")){
+
+			try(Statement stmt = connection.createStatement()){
+				stmt.executeUpdate("CREATE TABLE EXPORTED (DKEY VARCHAR(16) NOT NULL, IDXNAME VARCHAR(256) NOT NULL, IDXTYPE VARCHAR(256), DOCID VARCHAR(256), DATA BLOB, HASH BIGINT, PRIMARY KEY (DKEY, IDXNAME, IDXTYPE, DOCID));");
+			}
+
+			try(PreparedStatement pstmt = connection.prepareStatement("INSERT INTO EXPORTED (DKEY, IDXNAME, IDXTYPE, DOCID, DATA) VALUES (?,?,?,?,?)")){
+
+				for(int i=2;i>=0;i--) {
+					for(String index : Arrays.asList("rec_2_dk", "msg_1_dk", "rec_1_dk")) {
+						pstmt.setString(1, "dk");
+						pstmt.setString(2, index);
+						pstmt.setString(3, "_doc");
+						pstmt.setString(4, String.valueOf(i));
+						pstmt.setBytes(5, String.format("{\"n\":%d}", i).getBytes(StandardCharsets.UTF_8));
+						pstmt.executeUpdate();
+					}
+				}
+			}
+		}
+
+		Importer importer = Importer.instance();
+		importer.setHttp(true);
+		importer.setHost("localhost");
+		importer.setPort(server.getAddress().getPort());
+		importer.setOutFolder(folder.getRoot().getAbsolutePath());
+		importer.setFormat("db");
+		importer.setBulkSize(2);
+		importer.setBulkWorkers(1);
+		importer.setBulkQueue(2);
+		importer.setup();
+		importer.start();
+
+		assertEquals(Arrays.asList(
+				"msg_1_dk/0", "msg_1_dk/1", "msg_1_dk/2",
+				"rec_1_dk/0", "rec_1_dk/1", "rec_1_dk/2",
+				"rec_2_dk/0", "rec_2_dk/1", "rec_2_dk/2"), imported);
+	}
+
+}